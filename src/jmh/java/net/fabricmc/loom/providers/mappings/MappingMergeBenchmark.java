@@ -0,0 +1,133 @@
+/*
+ * This file is part of fabric-loom, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2016, 2017, 2018 FabricMC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.fabricmc.loom.providers.mappings;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import net.fabricmc.loom.providers.mappings.MappingBlob.InvertionTarget;
+
+/**
+ * Measures merging Yarn sized mappings over Intermediary the way {@link net.fabricmc.loom.providers.MappingsProvider} does,
+ * reporting the peak heap used alongside the time taken. Run with {@code -prof gc} to see the allocation rate too.
+ * Both building the combined mappings up and streaming them out class by class are measured.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2G")
+public class MappingMergeBenchmark {
+	/**
+	 * The peak heap used over the iteration, as the sum of the peak of each heap pool.
+	 * Each pool might peak at a different time so this is an upper bound, but it is consistent between runs.
+	 */
+	@State(Scope.Thread)
+	@AuxCounters(AuxCounters.Type.EVENTS)
+	public static class Heap {
+		public long peakHeapMB;
+
+		@Setup(Level.Iteration)
+		public void reset() {
+			System.gc();
+
+			for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+				if (pool.getType() == MemoryType.HEAP) pool.resetPeakUsage();
+			}
+		}
+
+		void record() {
+			long peak = 0;
+
+			for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+				if (pool.getType() == MemoryType.HEAP) peak += pool.getPeakUsage().getUsed();
+			}
+
+			peakHeapMB = peak >> 20;
+		}
+	}
+
+	@Param({"8000"})
+	public int classes;
+	@Param({"60000"})
+	public int methods;
+	@Param({"30000"})
+	public int fields;
+
+	private SyntheticMappings mappings;
+
+	@Setup(Level.Trial)
+	public void setup() {
+		mappings = new SyntheticMappings(classes, methods, fields);
+	}
+
+	/** Returns the renamed mappings and the fallback to combine them with */
+	private MappingBlob[] stack() {
+		MappingBlob intermediaries = new MappingBlob();
+		mappings.intermediary(intermediaries);
+
+		MappingBlob inversion = intermediaries.invert(InvertionTarget.MEMBERS);
+		MappingBlob merged = new MappingBlob(intermediaries);
+
+		MappingBlob yarn = new MappingBlob(merged);
+		mappings.yarn(yarn);
+		merged.overlay(yarn, inversion);
+
+		return new MappingBlob[] {merged.rename(inversion), intermediaries};
+	}
+
+	@Benchmark
+	public MappingSplat merge(Heap heap) {
+		MappingBlob[] stack = stack();
+		MappingSplat combined = new MappingSplat(stack[0], stack[1]);
+		heap.record();
+		return combined;
+	}
+
+	@Benchmark
+	public void mergeStreaming(Heap heap, Blackhole blackhole) {
+		MappingBlob[] stack = stack();
+		MappingSplat.combine(stack[0], stack[1], blackhole::consume);
+		heap.record();
+	}
+}
@@ -0,0 +1,113 @@
+/*
+ * This file is part of fabric-loom, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2016, 2017, 2018 FabricMC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.fabricmc.loom.providers.mappings;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures reading Yarn sized mappings in each format loom accepts, and converting Tiny V2 down to V1.
+ * The files are generated by {@link SyntheticMappings} so no network access is needed. Run with {@code -prof gc} for the allocation rate.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2G")
+public class MappingReadBenchmark {
+	@Param({"8000"})
+	public int classes;
+	@Param({"60000"})
+	public int methods;
+	@Param({"30000"})
+	public int fields;
+
+	private File directory;
+	private Path tinyV1, tinyV2, enigma;
+	private Path convertedTiny, convertedParams;
+
+	@Setup(Level.Trial)
+	public void setup() throws IOException {
+		directory = Files.createTempDirectory("loom-jmh").toFile();
+		SyntheticMappings mappings = new SyntheticMappings(classes, methods, fields);
+
+		mappings.writeTinyV1(tinyV1 = new File(directory, "v1.tiny").toPath());
+		mappings.writeTinyV2(tinyV2 = new File(directory, "v2.tiny").toPath());
+		mappings.writeEnigma(enigma = new File(directory, "enigma.zip").toPath());
+
+		convertedTiny = new File(directory, "converted.tiny").toPath();
+		convertedParams = new File(directory, "converted.params").toPath();
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException {
+		FileUtils.deleteDirectory(directory);
+	}
+
+	@Benchmark
+	public MappingBlob readTinyV1() throws IOException {
+		MappingBlob blob = new MappingBlob();
+		TinyReader.readTiny(tinyV1, "intermediary", "named", blob);
+		return blob;
+	}
+
+	@Benchmark
+	public MappingBlob readTinyV2() throws IOException {
+		MappingBlob blob = new MappingBlob();
+		TinyReader.readTiny(tinyV2, "intermediary", "named", blob);
+		return blob;
+	}
+
+	@Benchmark
+	public MappingBlob readEnigma() throws IOException {
+		MappingBlob blob = new MappingBlob();
+		EnigmaReader.readEnigma(enigma, blob);
+		return blob;
+	}
+
+	@Benchmark
+	public void convertTinyV2toV1() {
+		TinyV2toV1.convert(tinyV2, convertedTiny, convertedParams);
+	}
+}
@@ -0,0 +1,111 @@
+/*
+ * This file is part of fabric-loom, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2016, 2017, 2018 FabricMC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.fabricmc.loom.providers.mappings;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import net.fabricmc.loom.providers.mappings.MappingBlob.InvertionTarget;
+import net.fabricmc.loom.providers.mappings.MappingBlob.Mapping;
+import net.fabricmc.loom.providers.mappings.MappingBlob.Mapping.Field;
+import net.fabricmc.loom.providers.mappings.MappingBlob.Mapping.Method;
+
+/**
+ * Measures inverting and renaming Yarn sized mappings, and splatting them together with Intermediary, on mappings built once up front.
+ * Inverted and renamed blobs are views, so each is walked through completely to measure the work rather than just making the view.
+ * Run with {@code -prof gc} for the allocation rate.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2G")
+public class MappingTransformBenchmark {
+	@Param({"8000"})
+	public int classes;
+	@Param({"60000"})
+	public int methods;
+	@Param({"30000"})
+	public int fields;
+
+	private MappingBlob intermediaries, inversion, merged;
+
+	@Setup(Level.Trial)
+	public void setup() {
+		SyntheticMappings mappings = new SyntheticMappings(classes, methods, fields);
+
+		intermediaries = new MappingBlob();
+		mappings.intermediary(intermediaries);
+		inversion = intermediaries.invert(InvertionTarget.MEMBERS);
+
+		merged = new MappingBlob(intermediaries);
+		MappingBlob yarn = new MappingBlob(merged);
+		mappings.yarn(yarn);
+		merged.overlay(yarn, inversion);
+	}
+
+	private static void consume(MappingBlob blob, Blackhole blackhole) {
+		for (Mapping mapping : blob) {
+			blackhole.consume(mapping.to());
+
+			for (Method method : mapping.methods()) {
+				blackhole.consume(method.name());
+			}
+
+			for (Field field : mapping.fields()) {
+				blackhole.consume(field.name());
+			}
+		}
+	}
+
+	@Benchmark
+	public void invert(Blackhole blackhole) {
+		consume(intermediaries.invert(InvertionTarget.MEMBERS), blackhole);
+	}
+
+	@Benchmark
+	public void rename(Blackhole blackhole) {
+		consume(merged.rename(inversion), blackhole);
+	}
+
+	@Benchmark
+	public MappingSplat splat() {
+		return new MappingSplat(merged.rename(inversion), intermediaries);
+	}
+}
@@ -0,0 +1,306 @@
+/*
+ * This file is part of fabric-loom, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2016, 2017, 2018 FabricMC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.fabricmc.loom.providers.mappings;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import net.fabricmc.loom.util.SyntheticJars;
+
+/**
+ * Generates deterministic Intermediary and Yarn shaped mapping sets of any size for benchmarking against.
+ *
+ * <p>Every call makes fresh strings, as reading the mappings from a file would. The same mappings can also be written out as
+ * Tiny V1, Tiny V2 and Enigma files, with official, intermediary and named namespaces, for benchmarking the readers against.
+ */
+public class SyntheticMappings {
+	public final int classes, methods, fields;
+	private final long seed;
+
+	public SyntheticMappings(int classes, int methods, int fields) {
+		this.classes = classes;
+		this.methods = methods;
+		this.fields = fields;
+		seed = classes * 31L + methods * 17L + fields;
+	}
+
+	/** Sized like Yarn for a modern Minecraft version, roughly 8k classes, 60k methods, 30k fields and 100k parameters */
+	public static SyntheticMappings yarnSized() {
+		return new SyntheticMappings(8000, 60000, 30000);
+	}
+
+	public static String obfName(int index) {
+		StringBuilder name = new StringBuilder();
+
+		do {
+			name.append((char) ('a' + index % 26));
+			index = index / 26 - 1;
+		} while (index >= 0);
+
+		return name.reverse().toString();
+	}
+
+	public static String interName(int index) {
+		return SyntheticJars.className(index);
+	}
+
+	public static String namedName(int index) {
+		return "net/minecraft/pkg" + index % 32 + "/Named" + index;
+	}
+
+	private enum Namespace {
+		OFFICIAL, INTERMEDIARY;
+
+		String className(int index) {
+			switch (this) {
+			case OFFICIAL:
+				return obfName(index);
+
+			case INTERMEDIARY:
+				return interName(index);
+
+			default:
+				throw new AssertionError(this);
+			}
+		}
+	}
+
+	private static void appendType(StringBuilder desc, Random random, int classes, Namespace namespace) {
+		switch (random.nextInt(4)) {
+		case 0:
+			desc.append('I');
+			break;
+
+		case 1:
+			desc.append('Z');
+			break;
+
+		default:
+			desc.append('L').append(namespace.className(random.nextInt(classes))).append(';');
+			break;
+		}
+	}
+
+	private String methodDesc(int method, Namespace namespace, int[] argCount) {
+		Random random = new Random(seed ^ method * 0x9E3779B97F4A7C15L);
+		StringBuilder desc = new StringBuilder("(");
+
+		int args = argCount[0] = random.nextInt(5);
+		for (int i = 0; i < args; i++) {
+			appendType(desc, random, classes, namespace);
+		}
+
+		desc.append(')');
+		if (random.nextBoolean()) {
+			desc.append('V');
+		} else {
+			appendType(desc, random, classes, namespace);
+		}
+
+		return desc.toString();
+	}
+
+	private String fieldDesc(int field, Namespace namespace) {
+		Random random = new Random(~seed ^ field * 0x9E3779B97F4A7C15L);
+		StringBuilder desc = new StringBuilder();
+		appendType(desc, random, classes, namespace);
+		return desc.toString();
+	}
+
+	private static int start(int clazz, int members, int classes) {
+		return (int) ((long) clazz * members / classes);
+	}
+
+	/** Receives every class and member with its name in each namespace, the named name is {@code null} if Yarn wouldn't give one */
+	private interface Sink {
+		void acceptClass(String official, String intermediary, String named) throws IOException;
+
+		void acceptMethod(String officialDesc, String intermediaryDesc, String official, String intermediary, String named, int args) throws IOException;
+
+		void acceptField(String officialDesc, String intermediaryDesc, String official, String intermediary, String named) throws IOException;
+	}
+
+	private void visit(Sink sink) throws IOException {
+		int[] args = new int[1];
+
+		for (int clazz = 0; clazz < classes; clazz++) {
+			sink.acceptClass(obfName(clazz), interName(clazz), clazz % 10 == 9 ? null : namedName(clazz));
+
+			for (int method = start(clazz, methods, classes), first = method, end = start(clazz + 1, methods, classes); method < end; method++) {
+				String officialDesc = methodDesc(method, Namespace.OFFICIAL, args);
+				String intermediaryDesc = methodDesc(method, Namespace.INTERMEDIARY, args);
+				sink.acceptMethod(officialDesc, intermediaryDesc, obfName(method - first), "method_" + method, method % 7 == 6 ? null : "named" + method, args[0]);
+			}
+
+			for (int field = start(clazz, fields, classes), first = field, end = start(clazz + 1, fields, classes); field < end; field++) {
+				sink.acceptField(fieldDesc(field, Namespace.OFFICIAL), fieldDesc(field, Namespace.INTERMEDIARY), obfName(field - first), "field_" + field, field % 5 == 4 ? null : "named" + field);
+			}
+		}
+	}
+
+	/** Writes a Tiny V1 file going from official to intermediary to named, as an extracted Yarn jar would have */
+	public void writeTinyV1(Path file) throws IOException {
+		try (Writer writer = Files.newBufferedWriter(file)) {
+			writer.write("v1\tofficial\tintermediary\tnamed\n");
+
+			visit(new Sink() {
+				private String owner;
+
+				@Override
+				public void acceptClass(String official, String intermediary, String named) throws IOException {
+					owner = official;
+					writer.write("CLASS\t" + official + '\t' + intermediary + '\t' + (named != null ? named : intermediary) + '\n');
+				}
+
+				@Override
+				public void acceptMethod(String officialDesc, String intermediaryDesc, String official, String intermediary, String named, int args) throws IOException {
+					writer.write("METHOD\t" + owner + '\t' + officialDesc + '\t' + official + '\t' + intermediary + '\t' + (named != null ? named : intermediary) + '\n');
+				}
+
+				@Override
+				public void acceptField(String officialDesc, String intermediaryDesc, String official, String intermediary, String named) throws IOException {
+					writer.write("FIELD\t" + owner + '\t' + officialDesc + '\t' + official + '\t' + intermediary + '\t' + (named != null ? named : intermediary) + '\n');
+				}
+			});
+		}
+	}
+
+	/** Writes a Tiny V2 file going from official to intermediary to named, with parameter names for every named method */
+	public void writeTinyV2(Path file) throws IOException {
+		try (Writer writer = Files.newBufferedWriter(file)) {
+			writer.write("tiny\t2\t0\tofficial\tintermediary\tnamed\n");
+
+			visit(new Sink() {
+				@Override
+				public void acceptClass(String official, String intermediary, String named) throws IOException {
+					writer.write("c\t" + official + '\t' + intermediary + '\t' + (named != null ? named : intermediary) + '\n');
+				}
+
+				@Override
+				public void acceptMethod(String officialDesc, String intermediaryDesc, String official, String intermediary, String named, int args) throws IOException {
+					writer.write("\tm\t" + officialDesc + '\t' + official + '\t' + intermediary + '\t' + (named != null ? named : intermediary) + '\n');
+
+					if (named != null) {
+						for (int arg = 1; arg <= args; arg++) {
+							writer.write("\t\tp\t" + arg + "\t\t\targ" + arg + '\n');
+						}
+					}
+				}
+
+				@Override
+				public void acceptField(String officialDesc, String intermediaryDesc, String official, String intermediary, String named) throws IOException {
+					writer.write("\tf\t" + officialDesc + '\t' + official + '\t' + intermediary + '\t' + (named != null ? named : intermediary) + '\n');
+				}
+			});
+		}
+	}
+
+	/** Writes a zip of Enigma files going from intermediary to named, one per class as Yarn's are laid out */
+	public void writeEnigma(Path zip) throws IOException {
+		try (ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(zip))) {
+			Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+
+			visit(new Sink() {
+				@Override
+				public void acceptClass(String official, String intermediary, String named) throws IOException {
+					writer.flush();
+					out.putNextEntry(new ZipEntry("mappings/" + (named != null ? named : intermediary) + ".mapping"));
+					writer.write("CLASS " + intermediary + (named != null ? ' ' + named : "") + '\n');
+				}
+
+				@Override
+				public void acceptMethod(String officialDesc, String intermediaryDesc, String official, String intermediary, String named, int args) throws IOException {
+					if (named == null) return;
+					writer.write("\tMETHOD " + intermediary + ' ' + named + ' ' + intermediaryDesc + '\n');
+
+					for (int arg = 1; arg <= args; arg++) {
+						writer.write("\t\tARG " + arg + " arg" + arg + '\n');
+					}
+				}
+
+				@Override
+				public void acceptField(String officialDesc, String intermediaryDesc, String official, String intermediary, String named) throws IOException {
+					if (named != null) writer.write("\tFIELD " + intermediary + ' ' + named + ' ' + intermediaryDesc + '\n');
+				}
+			});
+
+			writer.flush();
+		}
+	}
+
+	/** Gives official to intermediary names for every class and member */
+	public void intermediary(IMappingAcceptor acceptor) {
+		int[] args = new int[1];
+
+		for (int clazz = 0; clazz < classes; clazz++) {
+			String owner = obfName(clazz);
+			acceptor.acceptClass(owner, interName(clazz));
+
+			for (int method = start(clazz, methods, classes), first = method, end = start(clazz + 1, methods, classes); method < end; method++) {
+				acceptor.acceptMethod(owner, obfName(method - first), methodDesc(method, Namespace.OFFICIAL, args), null, "method_" + method, null);
+			}
+
+			for (int field = start(clazz, fields, classes), first = field, end = start(clazz + 1, fields, classes); field < end; field++) {
+				acceptor.acceptField(owner, obfName(field - first), fieldDesc(field, Namespace.OFFICIAL), null, "field_" + field, null);
+			}
+		}
+	}
+
+	/** Gives intermediary to named names for most classes and members, with names for every parameter of named methods */
+	public void yarn(IMappingAcceptor acceptor) {
+		int[] args = new int[1];
+
+		for (int clazz = 0; clazz < classes; clazz++) {
+			String owner = interName(clazz);
+			acceptor.acceptClass(owner, clazz % 10 == 9 ? interName(clazz) : namedName(clazz));
+
+			for (int method = start(clazz, methods, classes), end = start(clazz + 1, methods, classes); method < end; method++) {
+				if (method % 7 == 6) continue;
+
+				String name = "method_" + method;
+				String desc = methodDesc(method, Namespace.INTERMEDIARY, args);
+				acceptor.acceptMethod(owner, name, desc, null, "named" + method, null);
+
+				for (int arg = 1; arg <= args[0]; arg++) {
+					acceptor.acceptMethodArg(owner, name, desc, arg, "arg" + arg);
+				}
+			}
+
+			for (int field = start(clazz, fields, classes), end = start(clazz + 1, fields, classes); field < end; field++) {
+				if (field % 5 == 4) continue;
+
+				acceptor.acceptField(owner, "field_" + field, fieldDesc(field, Namespace.INTERMEDIARY), null, "named" + field, null);
+			}
+		}
+	}
+}
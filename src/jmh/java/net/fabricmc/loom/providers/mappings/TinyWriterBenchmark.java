@@ -0,0 +1,117 @@
+/*
+ * This file is part of fabric-loom, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2016, 2017, 2018 FabricMC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.fabricmc.loom.providers.mappings;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import net.fabricmc.loom.providers.mappings.MappingBlob.InvertionTarget;
+import net.fabricmc.loom.providers.mappings.MappingSplat.CombinedMapping;
+import net.fabricmc.loom.providers.mappings.MappingSplat.CombinedMapping.CombinedField;
+import net.fabricmc.loom.providers.mappings.MappingSplat.CombinedMapping.CombinedMethod;
+
+/**
+ * Measures writing Yarn sized combined mappings out as Tiny, both plain and gzipped, the way {@link net.fabricmc.loom.providers.MappingsProvider} does.
+ * Run with {@code -prof gc} for the allocation rate.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2G")
+public class TinyWriterBenchmark {
+	@Param({"8000"})
+	public int classes;
+	@Param({"60000"})
+	public int methods;
+	@Param({"30000"})
+	public int fields;
+	@Param({"false", "true"})
+	public boolean compress;
+
+	private File directory;
+	private Path output;
+	private MappingSplat combined;
+
+	@Setup(Level.Trial)
+	public void setup() throws IOException {
+		directory = Files.createTempDirectory("loom-jmh").toFile();
+		output = new File(directory, compress ? "output.tiny.gz" : "output.tiny").toPath();
+
+		SyntheticMappings mappings = new SyntheticMappings(classes, methods, fields);
+		MappingBlob intermediaries = new MappingBlob();
+		mappings.intermediary(intermediaries);
+		MappingBlob inversion = intermediaries.invert(InvertionTarget.MEMBERS);
+
+		MappingBlob merged = new MappingBlob(intermediaries);
+		MappingBlob yarn = new MappingBlob(merged);
+		mappings.yarn(yarn);
+		merged.overlay(yarn, inversion);
+
+		combined = new MappingSplat(merged.rename(inversion), intermediaries);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException {
+		FileUtils.deleteDirectory(directory);
+	}
+
+	@Benchmark
+	public void write() throws IOException {
+		try (TinyWriter writer = new TinyWriter(output, compress, "official", "named", "intermediary")) {
+			for (CombinedMapping mapping : combined) {
+				String notch = mapping.from;
+				writer.acceptClass(notch, mapping.to, mapping.fallback);
+
+				for (CombinedMethod method : mapping.methods()) {
+					writer.acceptMethod(notch, method.fromDesc, method.from, method.to, method.fallback);
+				}
+
+				for (CombinedField field : mapping.fields()) {
+					writer.acceptField(notch, field.fromDesc, field.from, field.to, field.fallback);
+				}
+			}
+		}
+	}
+}
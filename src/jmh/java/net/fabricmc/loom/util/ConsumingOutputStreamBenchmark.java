@@ -0,0 +1,93 @@
+/*
+ * This file is part of fabric-loom, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2016, 2017, 2018 FabricMC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.fabricmc.loom.util;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures splitting trace level decompiler output into lines, written in the chunk sizes a process pump would use.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ConsumingOutputStreamBenchmark {
+	@Param({"10000"})
+	public int lines;
+	@Param({"8192"})
+	public int chunkSize;
+
+	private byte[] output;
+
+	@Setup
+	public void setup() {
+		StringBuilder text = new StringBuilder();
+
+		for (int i = 0; i < lines; i++) {
+			String name = SyntheticJars.className(i);
+			text.append(i % 16 + 20).append(" :: INFO:  Decompiling ").append(name).append(".method_").append(i % 10).append('\n');
+		}
+
+		output = text.toString().getBytes(StandardCharsets.UTF_8);
+	}
+
+	@Benchmark
+	public void splitLines(Blackhole blackhole) throws IOException {
+		try (ConsumingOutputStream stream = new ConsumingOutputStream(blackhole::consume)) {
+			for (int offset = 0; offset < output.length; offset += chunkSize) {
+				stream.write(output, offset, Math.min(chunkSize, output.length - offset));
+				stream.flush();
+			}
+		}
+	}
+
+	@Benchmark
+	public void splitLinesByByte(Blackhole blackhole) throws IOException {
+		try (ConsumingOutputStream stream = new ConsumingOutputStream(blackhole::consume)) {
+			for (byte b : output) {
+				stream.write(b);
+			}
+
+			stream.flush();
+		}
+	}
+}
@@ -0,0 +1,106 @@
+/*
+ * This file is part of fabric-loom, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2016, 2017, 2018 FabricMC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.fabricmc.loom.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class LineNumberRemapperBenchmark {
+	@Param({"1000", "10000"})
+	public int classes;
+	@Param({"10"})
+	public int methods;
+	@Param({"10"})
+	public int linesPerMethod;
+
+	private File directory;
+	private File jar;
+	private File lineMap;
+	private LineNumberRemapper remapper;
+	private File output;
+
+	@Setup(Level.Trial)
+	public void setup() throws IOException {
+		directory = Files.createTempDirectory("loom-jmh").toFile();
+		jar = SyntheticJars.createJar(new File(directory, "input.jar"), classes, methods, linesPerMethod);
+		lineMap = SyntheticJars.createLineMap(new File(directory, "input.lmap"), classes, methods * linesPerMethod);
+
+		remapper = new LineNumberRemapper();
+		remapper.readMappings(lineMap);
+	}
+
+	@Setup(Level.Invocation)
+	public void prepareOutput() throws IOException {
+		output = new File(directory, "output.jar");
+		Files.deleteIfExists(output.toPath());
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException {
+		FileUtils.deleteDirectory(directory);
+	}
+
+	@Benchmark
+	public LineNumberRemapper readMappings() {
+		LineNumberRemapper remapper = new LineNumberRemapper();
+		remapper.readMappings(lineMap);
+		return remapper;
+	}
+
+	@Benchmark
+	public void process() throws IOException {
+		try (FileSystem in = FileSystems.newFileSystem(URI.create("jar:" + jar.toURI()), Collections.emptyMap());
+				FileSystem out = FileSystems.newFileSystem(URI.create("jar:" + output.toURI()), Collections.singletonMap("create", "true"))) {
+			remapper.process(null, in.getPath("/"), out.getPath("/"));
+		}
+	}
+}
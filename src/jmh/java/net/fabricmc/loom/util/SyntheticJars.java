@@ -0,0 +1,121 @@
+/*
+ * This file is part of fabric-loom, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2016, 2017, 2018 FabricMC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.fabricmc.loom.util;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Random;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+/**
+ * Generates deterministic jars (and matching line maps) of any size for benchmarking against.
+ */
+public class SyntheticJars {
+	public static String className(int index) {
+		return "net/minecraft/pkg" + index % 32 + "/class_" + index;
+	}
+
+	public static byte[] createClass(String name, int methods, int linesPerMethod) {
+		ClassWriter writer = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+		writer.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC, name, null, "java/lang/Object", null);
+		writer.visitSource(name.substring(name.lastIndexOf('/') + 1) + ".java", null);
+
+		int line = 1;
+		for (int method = 0; method < methods; method++) {
+			MethodVisitor mv = writer.visitMethod(Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC, "method_" + method, "()I", null, null);
+			mv.visitCode();
+			mv.visitInsn(Opcodes.ICONST_0);
+			mv.visitVarInsn(Opcodes.ISTORE, 0);
+
+			for (int i = 0; i < linesPerMethod; i++) {
+				Label label = new Label();
+				mv.visitLabel(label);
+				mv.visitLineNumber(line++, label);
+				mv.visitIincInsn(0, i + 1);
+			}
+
+			mv.visitVarInsn(Opcodes.ILOAD, 0);
+			mv.visitInsn(Opcodes.IRETURN);
+			mv.visitMaxs(0, 0);
+			mv.visitEnd();
+		}
+
+		writer.visitEnd();
+		return writer.toByteArray();
+	}
+
+	public static File createJar(File jar, int classes, int methods, int linesPerMethod) throws IOException {
+		try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(jar))) {
+			for (int i = 0; i < classes; i++) {
+				String name = className(i);
+				out.putNextEntry(new ZipEntry(name + ".class"));
+				out.write(createClass(name, methods, linesPerMethod));
+				out.closeEntry();
+			}
+		}
+
+		return jar;
+	}
+
+	public static File createLineMap(File lineMap, int classes, int lines) throws IOException {
+		Random random = new Random(classes * 31L + lines);
+
+		try (PrintWriter writer = new PrintWriter(lineMap)) {
+			for (int i = 0; i < classes; i++) {
+				int[] mapping = new int[lines * 2];
+				int dest = 10;
+
+				for (int line = 0; line < lines; line++) {
+					dest += 1 + random.nextInt(3);
+					mapping[line * 2] = line + 1;
+					mapping[line * 2 + 1] = dest;
+				}
+
+				LineNumberRemapper.writeMappings(writer, className(i), mapping);
+			}
+		}
+
+		return lineMap;
+	}
+
+	public static String createSource(String name, int lines) {
+		StringBuilder source = new StringBuilder("package ").append(name, 0, name.lastIndexOf('/')).append(";\n\n");
+		source.append("public class ").append(name.substring(name.lastIndexOf('/') + 1)).append(" {\n");
+
+		for (int line = 0; line < lines; line++) {
+			source.append("\tpublic static int method_").append(line).append("() {\n\t\treturn ").append(line).append(";\n\t}\n");
+		}
+
+		return source.append("}\n").toString();
+	}
+}
@@ -60,6 +60,7 @@ public class LoomGradleExtension {
 	public String customManifest = null;
 	public String side = "both";
 	public boolean useIntermediaries = true;
+	public String decompiler = "fernflower";
 
 	private boolean bulldozeMappings;
 	private File atFile;
@@ -44,6 +44,7 @@ import net.fabricmc.loom.providers.MinecraftMappedProvider;
 import net.fabricmc.loom.task.AbstractDecompileTask;
 import net.fabricmc.loom.task.CleanLoomBinaries;
 import net.fabricmc.loom.task.CleanLoomMappings;
+import net.fabricmc.loom.task.DecompileTask;
 import net.fabricmc.loom.task.DownloadAssetsTask;
 import net.fabricmc.loom.task.GenEclipseRunsTask;
 import net.fabricmc.loom.task.GenIdeaProjectTask;
@@ -55,6 +56,7 @@ import net.fabricmc.loom.task.RemapSourcesJarTask;
 import net.fabricmc.loom.task.RunClientTask;
 import net.fabricmc.loom.task.RunServerTask;
 import net.fabricmc.loom.task.fernflower.FernFlowerTask;
+import net.fabricmc.loom.task.procyon.ProcyonEngine;
 
 public class LoomGradlePlugin extends AbstractPlugin {
 	private static File getMappedByproduct(Project project, String suffix) {
@@ -69,6 +71,21 @@ public class LoomGradlePlugin extends AbstractPlugin {
 		return new File(path.substring(0, path.length() - 4) + suffix);
 	}
 
+	private static void configureDecompile(Project project, AbstractDecompileTask task) {
+		LoomGradleExtension extension = project.getExtensions().getByType(LoomGradleExtension.class);
+		MinecraftLibraryProvider libraryProvider = extension.getMinecraftProvider().getLibraryProvider();
+		MinecraftMappedProvider minecraftProvider = extension.getMinecraftMappedProvider();
+
+		File mappedJar = minecraftProvider.getMappedJar();
+		File sourcesJar = getMappedByproduct(project, "-sources.jar");
+		File linemapFile = getMappedByproduct(project, "-sources.lmap");
+
+		task.setInput(mappedJar);
+		task.setOutput(sourcesJar);
+		task.setLineMapFile(linemapFile);
+		task.setLibraries(libraryProvider.getLibraries());
+	}
+
 	@Override
 	public void apply(Project target) {
 		super.apply(target);
@@ -94,27 +111,34 @@ public class LoomGradlePlugin extends AbstractPlugin {
 
 		TaskProvider<FernFlowerTask> decompileTask = register("genSourcesDecompile", FernFlowerTask.class, t -> {
 			t.getOutputs().upToDateWhen((o) -> false);
-		}, (project, task) -> {
-			LoomGradleExtension extension = project.getExtensions().getByType(LoomGradleExtension.class);
-			MinecraftLibraryProvider libraryProvider = extension.getMinecraftProvider().getLibraryProvider();
-			MinecraftMappedProvider minecraftProvider = extension.getMinecraftMappedProvider();
+		}, LoomGradlePlugin::configureDecompile);
 
-			File mappedJar = minecraftProvider.getMappedJar();
-			File sourcesJar = getMappedByproduct(project, "-sources.jar");
-			File linemapFile = getMappedByproduct(project, "-sources.lmap");
-
-			task.setInput(mappedJar);
-			task.setOutput(sourcesJar);
-			task.setLineMapFile(linemapFile);
-			task.setLibraries(libraryProvider.getLibraries());
-		});
+		TaskProvider<DecompileTask> procyonDecompileTask = register("genSourcesDecompileProcyon", DecompileTask.class, t -> {
+			t.setEngine(new ProcyonEngine());
+			t.getOutputs().upToDateWhen((o) -> false);
+		}, LoomGradlePlugin::configureDecompile);
 
 		TaskProvider<RemapLineNumbersTask> remapLineNumbersTask = register("genSourcesRemapLineNumbers", RemapLineNumbersTask.class, t -> {
 			t.getOutputs().upToDateWhen((o) -> false);
 		}, (project, task) -> {
-			task.dependsOn(decompileTask);
+			LoomGradleExtension extension = project.getExtensions().getByType(LoomGradleExtension.class);
+			AbstractDecompileTask decompile;
+
+			switch (extension.decompiler.toLowerCase(Locale.ROOT)) {
+			case "fernflower":
+			case "forgeflower":
+				decompile = decompileTask.get();
+				break;
+
+			case "procyon":
+				decompile = procyonDecompileTask.get();
+				break;
+
+			default:
+				throw new IllegalArgumentException("Unknown decompiler: " + extension.decompiler + " (expected fernflower or procyon)");
+			}
 
-			AbstractDecompileTask decompile = decompileTask.get();
+			task.dependsOn(decompile);
 			task.setInput(decompile.getInput());
 			task.setLineMapFile(decompile.getLineMapFile());
 			task.setOutput(getMappedByproduct(project, "-linemapped.jar"));
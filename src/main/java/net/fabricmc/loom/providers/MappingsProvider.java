@@ -9,6 +9,9 @@ package net.fabricmc.loom.providers;
 
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Iterables;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
 import com.google.common.net.UrlEscapers;
 import net.fabricmc.loom.LoomGradleExtension;
 import net.fabricmc.loom.dependencies.DependencyProvider;
@@ -17,17 +20,13 @@ import net.fabricmc.loom.providers.StackedMappingsProvider.MappingFile;
 import net.fabricmc.loom.providers.StackedMappingsProvider.MappingFile.MappingType;
 import net.fabricmc.loom.providers.mappings.*;
 import net.fabricmc.loom.providers.mappings.MappingBlob.InvertionTarget;
-import net.fabricmc.loom.providers.mappings.MappingBlob.Mapping;
-import net.fabricmc.loom.providers.mappings.MappingBlob.Mapping.Field;
-import net.fabricmc.loom.providers.mappings.MappingBlob.Mapping.Method;
-import net.fabricmc.loom.providers.mappings.MappingSplat.CombinedMapping;
 import net.fabricmc.loom.providers.mappings.MappingSplat.CombinedMapping.ArgOnlyMethod;
 import net.fabricmc.loom.providers.mappings.MappingSplat.CombinedMapping.CombinedField;
 import net.fabricmc.loom.providers.mappings.MappingSplat.CombinedMapping.CombinedMethod;
+import net.fabricmc.loom.util.Checksum;
 import net.fabricmc.loom.util.Constants;
 import net.fabricmc.loom.util.TinyRemapperMappingsHelper;
 import net.fabricmc.mappings.Mappings;
-import net.fabricmc.stitch.commands.CommandProposeFieldNames;
 import net.fabricmc.tinyremapper.IMappingProvider;
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.FilenameUtils;
@@ -38,12 +37,11 @@ import java.io.*;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URL;
-import java.nio.ByteBuffer;
-import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.FileSystem;
 import java.nio.file.*;
 import java.util.*;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
 import java.util.stream.Collectors;
 import java.util.zip.GZIPInputStream;
@@ -55,6 +53,8 @@ public class MappingsProvider extends LogicalDependencyProvider {
 	public MappingFactory mcRemappingFactory;
 
 	private static final String INTERMEDIARY = "net.fabricmc.intermediary";
+	/** How long a cached layer can go unused by any project before it is removed */
+	private static final long LAYER_EXPIRY = TimeUnit.DAYS.toMillis(30);
 	private final List<MappingFile> mappingFiles = new ArrayList<>();
 
 	public String mappingsName;
@@ -64,14 +64,14 @@ public class MappingsProvider extends LogicalDependencyProvider {
 	public File MAPPINGS_DIR;
 	public File MAPPINGS_MIXIN_EXPORT;
 
-	private Path stackHistory;
-	private boolean knownStack;
 	private File intermediaryNames;
 	// The mappings that gradle gives us
 	private File MAPPINGS_TINY_BASE;
 	// The mappings we use in practice
 	public File MAPPINGS_TINY;
 	private Path parameterNames;
+	// The versions of mapping stacks, only needed when there is a stack
+	private StackHistory stackHistory;
 
 	public Mappings getMappings() throws IOException {
 		return MappingsCache.INSTANCE.get(MAPPINGS_TINY.toPath());
@@ -92,6 +92,27 @@ public class MappingsProvider extends LogicalDependencyProvider {
 
 		initFiles(extension, project.getLogger(), minecraftProvider);
 
+		try {
+			setupMappings(project, extension, minecraftProvider);
+		} catch (Throwable t) {
+			//A new stack only keeps its version once it has been made, so the next new stack can have the number instead
+			if (stackHistory != null && stackHistory.release()) {
+				for (File output : new File[] {MAPPINGS_TINY_BASE, MAPPINGS_TINY, parameterNames.toFile(), new File(MAPPINGS_DIR, FilenameUtils.removeExtension(MAPPINGS_TINY.getName()) + ".jar")}) {
+					if (output.exists() && !output.delete()) output.deleteOnExit();
+				}
+			}
+
+			throw t;
+		}
+
+		if (stackHistory != null) stackHistory.commit();
+	}
+
+	private void setupMappings(Project project, LoomGradleExtension extension, MinecraftProvider minecraftProvider) throws Exception {
+		//A single Tiny V1 file can be used as it is, otherwise the mappings need putting in a jar of their own
+		boolean ownJar = mappingFiles.size() != 1 || Iterables.getOnlyElement(mappingFiles).type != MappingType.TinyV1;
+		File mappingJar = ownJar ? new File(MAPPINGS_DIR, FilenameUtils.removeExtension(MAPPINGS_TINY.getName()) + ".jar") : Iterables.getOnlyElement(mappingFiles).origin;
+
 		if (!MAPPINGS_TINY_BASE.exists() || !MAPPINGS_TINY.exists()) {
 			if (!MAPPINGS_DIR.exists()) {
 				MAPPINGS_DIR.mkdirs();
@@ -156,6 +177,7 @@ public class MappingsProvider extends LogicalDependencyProvider {
 				}).findFirst();
 
 				MappingBlob intermediaries = null;
+				File intermediarySource = null;
 				if (minecraftProvider.useIntermediaries) {
 					if (interProvider.isPresent()) {
 						MappingFile mappings = interProvider.get();
@@ -187,6 +209,7 @@ public class MappingsProvider extends LogicalDependencyProvider {
 						}
 
 						project.getLogger().lifecycle(":loading intermediaries " + mappings.origin.getName());
+						intermediarySource = mappings.origin;
 						switch (mappings.type) {
 							case Tiny:
 							case TinyV1:
@@ -219,150 +242,144 @@ public class MappingsProvider extends LogicalDependencyProvider {
 						}
 
 						TinyReader.readTiny(intermediaryNames.toPath(), "official", "intermediary", intermediaries = new MappingBlob());
+						intermediarySource = intermediaryNames;
 					}
 				}
 
 				MappingBlob inversion = intermediaries == null ? null : intermediaries.invert(InvertionTarget.MEMBERS);
-				MappingBlob mappings = new MappingBlob();
-				Map<String, MappingBlob> versionToIntermediaries = new HashMap<>();
+				MappingBlob mappings = new MappingBlob(intermediaries);
+				IntermediaryStore intermediaryStore = new IntermediaryStore(project.getLogger(), extension.getUserCache());
+				if (minecraftProvider.useIntermediaries) {
+					//Fetch the Intermediaries for any layers from other Minecraft versions which might need renaming all at once
+					intermediaryStore.prefetch(mappingFiles.stream().filter(mapping -> needsOtherIntermediaries(mapping, minecraftProvider.useIntermediaries)).map(mapping -> mapping.minecraftVersion).collect(Collectors.toSet()));
+				}
 
-				for (MappingFile mapping : mappingFiles) {
-					project.getLogger().lifecycle(":loading " + mapping.origin.getName());
+				//Each layer only depends on its own file and the Intermediaries it is read against, so can be kept for when another changes
+				File layers = new File(MAPPINGS_DIR, "layers");
+				Map<MappingFile, File> layerCaches = new HashMap<>();
+				if (mappingFiles.size() > 1) {
+					HashCode intermediaryHash = intermediarySource != null ? Checksum.sha1(intermediarySource) : null;
 
-					MappingBlob gains = new MappingBlob();
-					boolean nativeNames = false;
+					for (MappingFile mapping : mappingFiles) {
+						HashCode renamerHash = null;
 
-					switch (mapping.type) {
-					case TinyV1:
-					case TinyV2: {
-						String origin;
-						if (mapping.getNamespaces().contains("intermediary")) {
-							origin = "intermediary";
-						} else {
-							nativeNames = true;
-							origin = "official";
+						if (needsOtherIntermediaries(mapping, minecraftProvider.useIntermediaries)) {
+							//Renamed by another version's Intermediaries, so the layer is only the same whilst they are too
+							renamerHash = intermediaryStore.hash(mapping.minecraftVersion);
+							if (renamerHash == null) continue; //Not safe to cache without knowing which would be used
 						}
-						assert mapping.getNamespaces().contains("named");
 
-						try (FileSystem fileSystem = FileSystems.newFileSystem(mapping.origin.toPath(), null)) {
-							TinyReader.readTiny(fileSystem.getPath("mappings/mappings.tiny"), origin, "named", gains);
-						}
-						break;
+						layerCaches.put(mapping, new File(layers, layerKey(mapping, intermediaryHash, renamerHash, minecraftProvider.useIntermediaries) + ".layer"));
 					}
+				}
 
-					case TinyGz: {
-						Collection<String> namespaces = TinyReader.readHeaders(mapping.origin.toPath());
+				File[] cachedLayers = !layerCaches.isEmpty() ? layers.listFiles((dir, name) -> name.endsWith(".layer")) : null;
+				if (cachedLayers != null) {
+					//Every project on the Minecraft version shares the layers, so only those which none have used in a while can go
+					long cutoff = System.currentTimeMillis() - LAYER_EXPIRY;
 
-						String origin;
-						if (namespaces.contains("intermediary")) {
-							origin = "intermediary";
-						} else {
-							nativeNames = true;
-							origin = "official";
-						}
-						assert namespaces.contains("named");
-
-						TinyReader.readTiny(mapping.origin.toPath(), origin, "named", gains);
-						break;
+					for (File layer : cachedLayers) {
+						if (!layerCaches.containsValue(layer) && layer.lastModified() < cutoff) layer.delete();
 					}
+				}
 
-					case Enigma: {
-						EnigmaReader.readEnigma(mapping.origin.toPath(), gains);
-
-						if (gains.stream().parallel().noneMatch(classMapping -> classMapping.from.startsWith("net/minecraft/class_"))) {
-							nativeNames = true;
-						} else {
-							assert gains.stream().parallel().filter(classMapping -> classMapping.to() != null).allMatch(classMapping -> classMapping.from.startsWith("net/minecraft/class_") || classMapping.from.matches("com\\/mojang\\/.+\\$class_\\d+")):
-								gains.stream().filter(classMapping -> classMapping.to() != null && !classMapping.from.startsWith("net/minecraft/class_") && !classMapping.from.matches("com\\/mojang\\/.+\\$class_\\d+")).map(classMapping -> classMapping.from).collect(Collectors.joining(", ", "Found unexpected initial mapping classes: [", "]"));
-							assert gains.streamMethods().parallel().filter(method -> method.name() != null).allMatch(method -> method.fromName.startsWith("method_") || method.fromName.equals(method.name())):
-								gains.streamMethods().filter(method -> method.name() != null && !method.fromName.startsWith("method_")).map(method -> method.fromName + method.fromDesc).collect(Collectors.joining(", ", "Found unexpected method mappings: ", "]"));
-							assert gains.streamFields().parallel().filter(field -> field.name() != null).allMatch(field -> field.fromName.startsWith("field_")):
-								gains.streamFields().filter(field -> field.name() != null && !field.fromName.startsWith("field_")).map(field -> field.fromName).collect(Collectors.joining(", ", "Found unexpected field mappings: ", "]"));
+				for (MappingFile mapping : mappingFiles) {
+					File layer = layerCaches.get(mapping);
+					MappingBlob gains = null;
+
+					if (layer != null && layer.exists()) {
+						try {
+							gains = LayerCache.read(layer, mappings);
+							layer.setLastModified(System.currentTimeMillis()); //Mark it as still in use so it isn't pruned
+							project.getLogger().lifecycle(":loading " + mapping.origin.getName() + " (cached)");
+						} catch (IOException e) {
+							project.getLogger().warn("Unable to read cached layer from " + layer + ", will regenerate", e);
 						}
-						break;
 					}
 
-					case Tiny: //Should have already enlightened this by now
-						throw new IllegalStateException("Unexpected mappings type " + mapping.type + " from " + mapping.origin);
-					}
+					if (gains == null) {
+						project.getLogger().lifecycle(":loading " + mapping.origin.getName());
 
-					if (nativeNames && minecraftProvider.useIntermediaries) {
-						MappingBlob renamer;
-						if (!minecraftVersion.equals(mapping.minecraftVersion)) {
-							renamer = versionToIntermediaries.computeIfAbsent(mapping.minecraftVersion, version -> {
-								File intermediaryNames = new File(extension.getUserCache(), "mappings/" + version + '/' + INTERMEDIARY + "-intermediary.tiny");
-
-								if (!intermediaryNames.exists()) {//Grab intermediary mappings from Github
-									try {
-										FileUtils.copyURLToFile(new URL("https://github.com/FabricMC/intermediary/raw/master/mappings/" + UrlEscapers.urlPathSegmentEscaper().escape(minecraftVersion) + ".tiny"), intermediaryNames);
-									} catch (IOException e) {
-										throw new UncheckedIOException("Error downloading Intermediary mappings for " + version, e);
-									}
-								}
+						gains = new MappingBlob(mappings);
+						boolean nativeNames = false;
 
-								MappingBlob inters = new MappingBlob();
-								try {
-									TinyReader.readTiny(intermediaryNames.toPath(), "official", "intermediary", inters);
-								} catch (IOException e) {
-									throw new UncheckedIOException("Error reading Intermediary mappings for " + version, e);
-								}
-								return inters;
-							});
-						} else {
-							renamer = intermediaries;
-						}
-
-						gains = gains.rename(renamer);
-					}
-
-					for (Mapping classMapping : gains) {
-						//If the name has been lost since it was named there's no point including it
-						Mapping interMapping = null;
-						if(inversion != null) {
-							if (inversion.tryMapName(classMapping.from) == null) continue;
-							interMapping = inversion.get(classMapping.from);
-						}
+						switch (mapping.type) {
+						case TinyV1:
+						case TinyV2: {
+							String origin;
+							if (mapping.getNamespaces().contains("intermediary")) {
+								origin = "intermediary";
+							} else {
+								nativeNames = true;
+								origin = "official";
+							}
+							assert mapping.getNamespaces().contains("named");
 
-						Mapping existingClass = mappings.get(classMapping.from);
-						if (existingClass.to() == null && !classMapping.from.equals(classMapping.to())) {
-							mappings.acceptClass(classMapping.from, classMapping.to());
+							try (FileSystem fileSystem = FileSystems.newFileSystem(mapping.origin.toPath(), null)) {
+								TinyReader.readTiny(fileSystem.getPath("mappings/mappings.tiny"), origin, "named", gains);
+							}
+							break;
 						}
-						assert interMapping == null || interMapping.from.equals(existingClass.from);
 
-						for (Method method : classMapping.methods()) {
-							if (interMapping != null && !interMapping.hasMethod(method)) continue;
+						case TinyGz: {
+							Collection<String> namespaces = TinyReader.readHeaders(mapping.origin.toPath());
 
-							Method existingMethod = existingClass.method(method);
-							if (existingMethod.name() == null && !existingMethod.fromName.equals(method.name())) {
-								mappings.acceptMethod(classMapping.from, method.fromName, method.fromDesc, existingClass.to(), method.name(), method.desc());
+							String origin;
+							if (namespaces.contains("intermediary")) {
+								origin = "intermediary";
+							} else {
+								nativeNames = true;
+								origin = "official";
 							}
+							assert namespaces.contains("named");
 
-							if (method.hasArgs()) {
-								method.iterateArgs((arg, index) -> {
-									if (existingMethod.arg(index) == null) {
-										mappings.acceptMethodArg(classMapping.from, method.fromName, method.fromDesc, index, arg);
-									}
-								});
+							TinyReader.readTiny(mapping.origin.toPath(), origin, "named", gains);
+							break;
+						}
+
+						case Enigma: {
+							EnigmaReader.readEnigma(mapping.origin.toPath(), gains);
+
+							if (gains.stream().parallel().noneMatch(classMapping -> classMapping.from.startsWith("net/minecraft/class_"))) {
+								nativeNames = true;
+							} else {
+								assert gains.stream().parallel().filter(classMapping -> classMapping.to() != null).allMatch(classMapping -> classMapping.from.startsWith("net/minecraft/class_") || classMapping.from.matches("com\\/mojang\\/.+\\$class_\\d+")):
+									gains.stream().filter(classMapping -> classMapping.to() != null && !classMapping.from.startsWith("net/minecraft/class_") && !classMapping.from.matches("com\\/mojang\\/.+\\$class_\\d+")).map(classMapping -> classMapping.from).collect(Collectors.joining(", ", "Found unexpected initial mapping classes: [", "]"));
+								assert gains.streamMethods().parallel().filter(method -> method.name() != null).allMatch(method -> method.fromName.startsWith("method_") || method.fromName.equals(method.name())):
+									gains.streamMethods().filter(method -> method.name() != null && !method.fromName.startsWith("method_")).map(method -> method.fromName + method.fromDesc).collect(Collectors.joining(", ", "Found unexpected method mappings: ", "]"));
+								assert gains.streamFields().parallel().filter(field -> field.name() != null).allMatch(field -> field.fromName.startsWith("field_")):
+									gains.streamFields().filter(field -> field.name() != null && !field.fromName.startsWith("field_")).map(field -> field.fromName).collect(Collectors.joining(", ", "Found unexpected field mappings: ", "]"));
 							}
+							break;
 						}
 
-						for (Field field : classMapping.fields()) {
-							if (interMapping != null && !interMapping.hasField(field)) continue;
+						case Tiny: //Should have already enlightened this by now
+							throw new IllegalStateException("Unexpected mappings type " + mapping.type + " from " + mapping.origin);
+						}
 
-							Field existingField = existingClass.field(field);
-							if (existingField.name() == null && !existingField.fromName.equals(field.name())) {
-								mappings.acceptField(classMapping.from, field.fromName, field.fromDesc, existingClass.to(), field.name(), field.desc());
+						if (nativeNames && minecraftProvider.useIntermediaries) {
+							MappingBlob renamer;
+							if (!minecraftVersion.equals(mapping.minecraftVersion)) {
+								renamer = intermediaryStore.get(mapping.minecraftVersion, mappings);
+							} else {
+								renamer = intermediaries;
 							}
+
+							gains = gains.rename(renamer);
 						}
+
+						if (layer != null) LayerCache.write(layer, gains);
 					}
+
+					mappings.overlay(gains, inversion);
 				}
 
 				project.getLogger().lifecycle(":combining mappings");
-				MappingSplat combined = new MappingSplat(mappings.rename(inversion), intermediaries == null ? mappings : intermediaries);
-
 				project.getLogger().lifecycle(":writing " + MAPPINGS_TINY_BASE.getName());
+
+				BufferedWriter[] paramWriter = new BufferedWriter[1]; //Only made if there are parameter names to write
 				try (TinyWriter writer = new TinyWriter(MAPPINGS_TINY_BASE.toPath(), "official", "named", "intermediary")) {
-					for (CombinedMapping mapping : combined) {
+					MappingSplat.combine(mappings.rename(inversion), intermediaries == null ? mappings : intermediaries, mapping -> {
 						String notch = mapping.from;
 						writer.acceptClass(notch, mapping.to, mapping.fallback);
 
@@ -373,44 +390,44 @@ public class MappingsProvider extends LogicalDependencyProvider {
 						for (CombinedField field : mapping.fields()) {
 							writer.acceptField(notch, field.fromDesc, field.from, field.to, field.fallback);
 						}
-					}
-				}
 
-				if (combined.hasArgs()) {
-					project.getLogger().lifecycle(":writing " + parameterNames.getFileName());
-					try (BufferedWriter writer = Files.newBufferedWriter(parameterNames)) {
-						for (CombinedMapping mapping : combined) {
+						try {
 							for (ArgOnlyMethod method : mapping.allArgs()) {
-								writer.write(mapping.to + '/' + method.from + method.fromDesc);
-								writer.newLine();
+								if (paramWriter[0] == null) {
+									project.getLogger().lifecycle(":writing " + parameterNames.getFileName());
+									paramWriter[0] = Files.newBufferedWriter(parameterNames);
+								}
+
+								paramWriter[0].write(mapping.to + '/' + method.from + method.fromDesc);
+								paramWriter[0].newLine();
 								for (String arg : method.namedArgs()) {
 									assert !arg.endsWith(": null"); //Skip nulls
-									writer.write('\t');
-									writer.write(arg);
-									writer.newLine();
+									paramWriter[0].write('\t');
+									paramWriter[0].write(arg);
+									paramWriter[0].newLine();
 								}
 							}
+						} catch (IOException e) {
+							throw new UncheckedIOException("Error writing parameter names", e);
 						}
-					}
+					});
+				} finally {
+					if (paramWriter[0] != null) paramWriter[0].close();
 				}
 
 				if (MAPPINGS_TINY.exists()) {
 					MAPPINGS_TINY.delete();
 				}
-
-				//If we've successfully joined all the mappings together, save the stack
-				if (!knownStack && mappingFiles.size() > 1) writeStackHistory(mappingsVersion);
 			}
 
 			assert MAPPINGS_TINY_BASE.exists();
 			assert !MAPPINGS_TINY.exists();
 
+			FieldNameProposals proposals = FieldNameProposals.forJar(project.getLogger(), minecraftProvider.getJar());
 			project.getLogger().lifecycle(":populating field names");
-			new CommandProposeFieldNames().run(new String[] {
-					minecraftProvider.getJar().getAbsolutePath(),
-					MAPPINGS_TINY_BASE.getAbsolutePath(),
-					MAPPINGS_TINY.getAbsolutePath()
-			});
+			try (Writer writer = ownJar ? TinyWriter.newJarWriter(MAPPINGS_TINY.toPath(), mappingJar.toPath()) : Files.newBufferedWriter(MAPPINGS_TINY.toPath())) {
+				proposals.apply(MAPPINGS_TINY_BASE.toPath(), writer);
+			}
 		}
 
 		if (Files.exists(parameterNames)) {
@@ -459,13 +476,10 @@ public class MappingsProvider extends LogicalDependencyProvider {
 			mcRemappingFactory = (fromM, toM) -> TinyRemapperMappingsHelper.create(getMappings(), fromM, toM, false);
 		}
 
-		File mappingJar;
-		if (mappingFiles.size() == 1 && Iterables.getOnlyElement(mappingFiles).type == MappingType.TinyV1) {
-			mappingJar = Iterables.getOnlyElement(mappingFiles).origin;
+		if (!ownJar) {
 			if (MAPPINGS_TINY.lastModified() < mappingJar.lastModified()) MAPPINGS_TINY.setLastModified(mappingJar.lastModified() - 1);
 		} else {
-			mappingJar = new File(MAPPINGS_DIR, FilenameUtils.removeExtension(MAPPINGS_TINY.getName()) + ".jar");
-
+			//The jar is normally written alongside the Tiny file, but it might have been made before that was the case or deleted since
 			if (!mappingJar.exists() || mappingJar.lastModified() < MAPPINGS_TINY.lastModified()) {
 				try (FileSystem fs = FileSystems.newFileSystem(new URI("jar:" + mappingJar.toURI()), Collections.singletonMap("create", "true"))) {
 					Path destination = fs.getPath("mappings/mappings.tiny");
@@ -484,114 +498,39 @@ public class MappingsProvider extends LogicalDependencyProvider {
 		addDependency(mappingJar, project, Constants.MAPPINGS);
 	}
 
-	private String readStackHistory() {
-		if (Files.notExists(stackHistory)) {
-			return "1";
-		} else {
-			List<String> expected = mappingFiles.stream().map(mappings -> mappings.name + '-' + mappings.version + ' ' + mappings.minecraftVersion).collect(Collectors.toList());
-			assert !expected.isEmpty();
-
-			try (BufferedReader reader = Files.newBufferedReader(stackHistory)) {
-				String currentVersion = reader.readLine();
-				String newestVersion = currentVersion;
-				int currentPosition = 0;
-				for (String line = reader.readLine(); line != null; line = reader.readLine()) {
-					assert !line.isEmpty();
-
-					if (line.charAt(0) != '\t') {
-						if (currentPosition == expected.size()) {
-							assert currentVersion != null;
-							knownStack = true;
-							return currentVersion;
-						}
-
-						currentVersion = line;
-						currentPosition = 0;
-					} else if (currentVersion != null) {
-						assert line.charAt(0) == '\t';
-
-						if (currentPosition >= expected.size() || !line.regionMatches(1, expected.get(currentPosition), 0, line.length() - 1)) {
-							currentVersion = null;
-						} else {
-							currentPosition++;
-						}
-					}
-				}
-
-				return Integer.toString(Integer.parseUnsignedInt(newestVersion) + 1);
-			} catch (IOException e) {
-				throw new UncheckedIOException("Error reading stack history file at " + stackHistory, e);
-			}
-		}
+	/** Whether the given mapping file might need renaming by the Intermediaries of another Minecraft version */
+	private boolean needsOtherIntermediaries(MappingFile mapping, boolean useIntermediaries) {
+		return useIntermediaries && !minecraftVersion.equals(mapping.minecraftVersion) && mayHaveNativeNames(mapping);
 	}
 
-	private void writeStackHistory(String version) {
-		assert !knownStack; //No need to go through all this if it's already in the history
-
-		StringBuilder addition = new StringBuilder(version).append('\n');
-
-		for (MappingFile mapping : mappingFiles) {
-			addition.append('\t').append(mapping.name).append('-').append(mapping.version).append(' ').append(mapping.minecraftVersion).append('\n');
-		}
-
-		byte data[] = addition.toString().getBytes(StandardCharsets.UTF_8);
-		ByteBuffer active;
-		if (data.length >= 4096) {
-			active = ByteBuffer.wrap(data);
-		} else {
-			active = ByteBuffer.allocate(4096);
-			active.put(data);
-			active.flip();
-		}
-		assert active.limit() == data.length;
-
-		ByteBuffer passive = ByteBuffer.allocate(active.capacity());
-
-		try (FileChannel channel = FileChannel.open(stackHistory, StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.CREATE)) {
-			assert channel.position() == 0;
-
-			if (passive.capacity() != active.capacity()) {//It's important the amount of the file read is the same as the amount written
-				throw new IllegalArgumentException("Inconsistent capacities between buffers: " + passive.capacity() + " and " + active.capacity());
-			}
-
-			long offset = passive.capacity() - active.limit(); //Account for reading/writing not necessarily being at the same start/end positions
-			assert offset >= 0;
-			do {
-				long position = channel.position();
-				if (position > 0 && offset > 0) {
-					channel.position(position + offset);
-				}
-
-				passive.clear(); //Ensure the buffer's limit == capacity, as well as position == 0
-
-				int read;
-				do {
-					read = channel.read(passive);
-				} while (read != -1 && passive.hasRemaining());
-				//System.out.println("Read in \"" + new String(passive.array(), 0, passive.position()) + '"');
-				passive.flip();
-
-				channel.position(position);
-
-				//System.out.println("Writing \"" + new String(active.array(), active.position(), active.remaining()) + '"');
-				while (active.hasRemaining()) {
-					channel.write(active);
-				}
+	/** Whether the given mapping file could be in official rather than Intermediary names, which can only be known for certain once Enigma mappings are read */
+	private static boolean mayHaveNativeNames(MappingFile mapping) {
+		try {
+			switch (mapping.type) {
+			case TinyV1:
+			case TinyV2:
+				return !mapping.getNamespaces().contains("intermediary");
 
-				ByteBuffer swap = passive;
-				passive = active;
-				active = swap;
-			} while (active.limit() >= active.capacity());
+			case TinyGz:
+				return !TinyReader.readHeaders(mapping.origin.toPath()).contains("intermediary");
 
-			while (active.hasRemaining()) {
-				//System.out.println("Writing final \"" + new String(active.array(), active.position(), active.remaining()) + '"');
-				channel.write(active);
+			default:
+				return true;
 			}
 		} catch (IOException e) {
-			throw new UncheckedIOException("Error writing stack history file to " + stackHistory, e);
+			throw new UncheckedIOException("Error reading mapping file from " + mapping.origin, e);
 		}
 	}
 
+	private HashCode layerKey(MappingFile mapping, HashCode intermediaryHash, HashCode renamerHash, boolean useIntermediaries) throws IOException {
+		Hasher hasher = Hashing.sha1().newHasher().putString(mapping.type.name(), StandardCharsets.UTF_8);
+		hasher.putString(mapping.minecraftVersion, StandardCharsets.UTF_8).putString(minecraftVersion, StandardCharsets.UTF_8).putBoolean(useIntermediaries);
+		hasher.putBytes(Checksum.sha1(mapping.origin).asBytes());
+		if (intermediaryHash != null) hasher.putBytes(intermediaryHash.asBytes());
+		if (renamerHash != null) hasher.putByte((byte) 1).putBytes(renamerHash.asBytes());
+		return hasher.hash();
+	}
+
 	private void initFiles(LoomGradleExtension extension, Logger logger, MinecraftProvider minecraftProvider) {
 		MAPPINGS_DIR = new File(extension.getUserCache(), "mappings/" + minecraftProvider.minecraftVersion);
 
@@ -613,10 +552,10 @@ public class MappingsProvider extends LogicalDependencyProvider {
 
 		default: {
 			logger.lifecycle(":setting up mappings (" + mappingFiles.size() + " files in stack)");
-			stackHistory = new File(MAPPINGS_DIR, "stack.history").toPath();
+			stackHistory = new StackHistory(new File(MAPPINGS_DIR, "stacks").toPath(), new File(MAPPINGS_DIR, "stack.registry").toPath(), new File(MAPPINGS_DIR, "stack.history").toPath());
 
 			mappingsName = "stack";
-			mappingsVersion = readStackHistory();
+			mappingsVersion = stackHistory.versionOf(mappingFiles);
 			//The stack could be made up of multiple Minecraft versions, so we'll just use the version the stack will run on
 			minecraftVersion = minecraftProvider.minecraftVersion;
 			break;
@@ -108,14 +108,19 @@ public class MinecraftAssetsProvider {
 				}
 			}
 
-			String assetName = entry.getKey();
-			int end = assetName.lastIndexOf("/") + 1;
+			String asset = entry.getKey();
+			int current = position;
 
-			if (end > 0) {
-				assetName = assetName.substring(end);
-			}
+			progressLogger.progress(() -> {
+				String assetName = asset;
+				int end = assetName.lastIndexOf("/") + 1;
+
+				if (end > 0) {
+					assetName = assetName.substring(end);
+				}
 
-			progressLogger.progress(assetName + " - " + position + "/" + totalSize + " (" + (int) ((position / (double) totalSize) * 100) + "%) assets downloaded");
+				return assetName + " - " + current + "/" + totalSize + " (" + (int) ((current / (double) totalSize) * 100) + "%) assets downloaded";
+			});
 			position++;
 		}
 
@@ -0,0 +1,292 @@
+/*
+ * Copyright 2020 Chocohead
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package net.fabricmc.loom.providers;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.stream.Collectors;
+
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+
+import net.fabricmc.loom.providers.StackedMappingsProvider.MappingFile;
+import net.fabricmc.loom.util.FileHashes;
+
+/**
+ * Gives each distinct stack of mapping files a version number, so that the files produced for one stack are never mistaken for another's.
+ *
+ * <p>Stacks are keyed by a hash of the name, version, Minecraft version and contents of each file in order. The content
+ * hashes are kept in {@code stack.hashes} next to the index as {@link FileHashes}, so only files which have changed need
+ * reading again. The index is a directory with a file per stack named by its key holding its version, so finding the version
+ * of a known stack is a single small read however many stacks have been registered for the Minecraft version.
+ *
+ * <p>A new stack's version is only reserved at first, as a {@code key.pending} file along with a {@code version.version} file
+ * claiming the number. Once the stack has been built the reservation is {@link #commit() committed}, or should building fail,
+ * {@link #release() released} so the number can be given to the next new stack instead. Reservations are handed out holding
+ * both a lock within the JVM (as projects built in parallel share a daemon) and a lock on the index's {@code .lock} file, so
+ * concurrent builds agree on the versions they hand out. A reservation already pending is shared by any other build of the
+ * same stack, whether it is still being built or its build died, but only the build which made it can release it.
+ *
+ * <p>Versions given out by the older {@code stack.registry} log are imported into the index the first time it is used. Those
+ * given out by the even older {@code stack.history} format are honoured for stacks with the same names when still free.
+ */
+final class StackHistory {
+	private interface Action<T> {
+		T run() throws IOException;
+	}
+
+	/** Locks within the JVM by lock file, as two file locks on the same file from one JVM throws rather than waits */
+	private static final ConcurrentMap<Path, Object> LOCKS = new ConcurrentHashMap<>();
+	private final Path index, latest, registry, legacy;
+	private final FileHashes hashes;
+	private String reservedKey, reservedVersion;
+	private boolean shared;
+
+	StackHistory(Path index, Path registry, Path legacy) {
+		this.index = index;
+		latest = index.resolve("latest");
+		this.registry = registry;
+		this.legacy = legacy;
+		hashes = new FileHashes(index.resolveSibling("stack.hashes"));
+	}
+
+	HashCode key(List<MappingFile> stack) throws IOException {
+		Hasher hasher = Hashing.sha1().newHasher();
+
+		for (MappingFile mapping : stack) {
+			hasher.putString(mapping.name, StandardCharsets.UTF_8).putByte((byte) 0);
+			hasher.putString(mapping.version, StandardCharsets.UTF_8).putByte((byte) 0);
+			hasher.putString(mapping.minecraftVersion, StandardCharsets.UTF_8).putByte((byte) 0);
+			hasher.putBytes(hashes.sha1(mapping.origin).asBytes());
+		}
+
+		hashes.save();
+		return hasher.hash();
+	}
+
+	/** Returns the version of the given stack, reserving the next free version for it if it is new */
+	String versionOf(List<MappingFile> stack) {
+		try {
+			String key = key(stack).toString();
+
+			Path entry = index.resolve(key);
+			if (Files.exists(entry)) return read(entry);
+
+			return locked(() -> reserve(key, stack));
+		} catch (IOException e) {
+			throw new UncheckedIOException("Error reading stack history at " + index, e);
+		}
+	}
+
+	private Path claim(String version) {
+		return index.resolve(version + ".version");
+	}
+
+	private String reserve(String key, List<MappingFile> stack) throws IOException {
+		Path entry = index.resolve(key);
+		if (Files.exists(entry)) return read(entry); //Another build finished the stack whilst waiting for the lock
+
+		Path pending = index.resolve(key + ".pending");
+		String version;
+
+		if (Files.exists(pending)) {
+			//Either another build is making the stack right now or one died whilst doing so, either way the version is the stack's
+			version = read(pending);
+			shared = true;
+		} else {
+			int newest = Integer.parseUnsignedInt(read(latest));
+			version = readLegacy(stack);
+
+			if (version == null) {
+				version = Integer.toString(newest + 1);
+				write(latest, version);
+			}
+
+			write(claim(version), key);
+			write(pending, version);
+			shared = false;
+		}
+
+		reservedKey = key;
+		reservedVersion = version;
+		return version;
+	}
+
+	/** Makes the version reserved by {@link #versionOf(List)} the stack's for good, now it has successfully been built */
+	void commit() {
+		if (reservedKey == null) return;
+
+		try {
+			locked(() -> {
+				Path claim = claim(reservedVersion);
+				if (Files.notExists(claim)) {
+					write(claim, reservedKey); //Released by the build which reserved it failing whilst this one was building
+				} else if (!reservedKey.equals(read(claim))) {
+					throw new IllegalStateException("Version " + reservedVersion + " was given to another stack whilst building " + reservedKey);
+				}
+
+				write(index.resolve(reservedKey), reservedVersion);
+				Files.deleteIfExists(index.resolve(reservedKey + ".pending"));
+				return null;
+			});
+		} catch (IOException e) {
+			throw new UncheckedIOException("Error writing stack history at " + index, e);
+		} finally {
+			reservedKey = reservedVersion = null;
+		}
+	}
+
+	/**
+	 * Gives back the version reserved by {@link #versionOf(List)} after the stack failed to be built, so the number can be used again.
+	 *
+	 * A version shared with another build of the same stack is left for that build to commit or release instead.
+	 *
+	 * @return Whether there was a version to give back, in which case anything produced for it should be removed
+	 */
+	boolean release() {
+		if (reservedKey == null) return false;
+
+		if (shared) {
+			reservedKey = reservedVersion = null;
+			return false;
+		}
+
+		try {
+			locked(() -> {
+				Path pending = index.resolve(reservedKey + ".pending");
+				if (Files.exists(pending) && reservedVersion.equals(read(pending))) Files.delete(pending);
+
+				Path claim = claim(reservedVersion);
+				if (Files.exists(claim) && reservedKey.equals(read(claim)) && Files.notExists(index.resolve(reservedKey))) {
+					Files.delete(claim);
+
+					//Only the newest version can be handed out again without risking it going to a stack which the old history gave it to
+					if (reservedVersion.equals(read(latest))) write(latest, Integer.toString(Integer.parseUnsignedInt(reservedVersion) - 1));
+				}
+
+				return null;
+			});
+		} catch (IOException e) {
+			throw new UncheckedIOException("Error writing stack history at " + index, e);
+		} finally {
+			reservedKey = reservedVersion = null;
+		}
+
+		return true;
+	}
+
+	private <T> T locked(Action<T> action) throws IOException {
+		Files.createDirectories(index);
+		Path lockFile = index.resolve(".lock").toAbsolutePath().normalize();
+
+		synchronized (LOCKS.computeIfAbsent(lockFile, path -> new Object())) {
+			try (FileChannel channel = FileChannel.open(lockFile, StandardOpenOption.WRITE, StandardOpenOption.CREATE); FileLock lock = channel.lock()) {
+				if (Files.notExists(latest)) migrate();
+				return action.run();
+			}
+		}
+	}
+
+	/** Imports the versions the older registry log gave out, then records the newest version either it or the older history reached */
+	private void migrate() throws IOException {
+		int newest = 0;
+
+		if (Files.exists(registry)) {
+			try (BufferedReader reader = Files.newBufferedReader(registry, StandardCharsets.UTF_8)) {
+				for (Entry<String, String> entry : read(reader).entrySet()) {
+					write(index.resolve(entry.getKey()), entry.getValue());
+					write(claim(entry.getValue()), entry.getKey());
+					newest = Math.max(newest, Integer.parseUnsignedInt(entry.getValue()));
+				}
+			}
+		}
+
+		if (Files.exists(legacy)) {
+			for (String line : Files.readAllLines(legacy, StandardCharsets.UTF_8)) {
+				if (!line.startsWith("\t")) newest = Math.max(newest, Integer.parseUnsignedInt(line));
+			}
+		}
+
+		write(latest, Integer.toString(newest));
+	}
+
+	private static Map<String, String> read(BufferedReader reader) throws IOException {
+		Map<String, String> versions = new HashMap<>();
+
+		//Only whole lines are ever taken, which readLine can't tell apart from a final line without its newline
+		StringBuilder line = new StringBuilder();
+		for (int c = reader.read(); c != -1; c = reader.read()) {
+			if (c != '\n') {
+				line.append((char) c);
+			} else {
+				int split = line.indexOf("\t");
+				if (split > 0) versions.put(line.substring(0, split), line.substring(split + 1));
+				line.setLength(0);
+			}
+		}
+
+		return versions;
+	}
+
+	private static String read(Path file) throws IOException {
+		return new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+	}
+
+	private static void write(Path file, String contents) throws IOException {
+		//Written off to the side so a build reading without the lock never sees half a file
+		Path temp = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+		try {
+			Files.write(temp, contents.getBytes(StandardCharsets.UTF_8));
+
+			try {
+				Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+			}
+		} finally {
+			Files.deleteIfExists(temp);
+		}
+	}
+
+	/** Finds the version the old stack history gave the given stack if it is still free, otherwise {@code null} */
+	private String readLegacy(List<MappingFile> stack) throws IOException {
+		if (Files.notExists(legacy)) return null;
+
+		//Newest first, each version on its own line followed by a tabbed line for each file in the stack
+		List<String> expected = stack.stream().map(mappings -> '\t' + mappings.name + '-' + mappings.version + ' ' + mappings.minecraftVersion).collect(Collectors.toList());
+		List<String> lines = Files.readAllLines(legacy, StandardCharsets.UTF_8);
+
+		for (int i = 0; i < lines.size();) {
+			String version = lines.get(i++);
+
+			int start = i;
+			while (i < lines.size() && lines.get(i).startsWith("\t")) i++;
+
+			//The files might have changed since, in which case the version will already be taken by how they were before
+			if (lines.subList(start, i).equals(expected) && Files.notExists(claim(version))) return version;
+		}
+
+		return null;
+	}
+}
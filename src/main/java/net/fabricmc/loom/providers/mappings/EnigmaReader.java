@@ -25,169 +25,216 @@ package net.fabricmc.loom.providers.mappings;
 
 import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.InputStreamReader;
 import java.io.UncheckedIOException;
-import java.nio.file.FileSystems;
-import java.nio.file.FileVisitOption;
-import java.nio.file.Files;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
 import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
 import java.util.Queue;
-import java.util.stream.Stream;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
 
 public class EnigmaReader {
+	/** Holds onto the mappings read from a single file so they can be passed on in a consistent order */
+	private static class MappingBuffer implements IMappingAcceptor {
+		private final List<Consumer<IMappingAcceptor>> mappings = new ArrayList<>();
+
+		@Override
+		public void acceptClass(String srcName, String dstName) {
+			mappings.add(acceptor -> acceptor.acceptClass(srcName, dstName));
+		}
+
+		@Override
+		public void acceptMethod(String srcClsName, String srcName, String srcDesc, String dstClsName, String dstName, String dstDesc) {
+			mappings.add(acceptor -> acceptor.acceptMethod(srcClsName, srcName, srcDesc, dstClsName, dstName, dstDesc));
+		}
+
+		@Override
+		public void acceptMethodArg(String srcClsName, String srcMethodName, String srcMethodDesc, int lvIndex, String dstArgName) {
+			mappings.add(acceptor -> acceptor.acceptMethodArg(srcClsName, srcMethodName, srcMethodDesc, lvIndex, dstArgName));
+		}
+
+		@Override
+		public void acceptField(String srcClsName, String srcName, String srcDesc, String dstClsName, String dstName, String dstDesc) {
+			mappings.add(acceptor -> acceptor.acceptField(srcClsName, srcName, srcDesc, dstClsName, dstName, dstDesc));
+		}
+
+		public void applyTo(IMappingAcceptor acceptor) {
+			for (Consumer<IMappingAcceptor> mapping : mappings) {
+				mapping.accept(acceptor);
+			}
+		}
+	}
+
 	public static void readEnigma(Path dir, IMappingAcceptor mappingAcceptor) throws IOException {
-		try (Stream<Path> stream = Files.find(FileSystems.newFileSystem(dir, null).getPath("/"),
-				Integer.MAX_VALUE,
-				(path, attr) -> attr.isRegularFile() && path.getFileName().toString().endsWith(".mapping"),
-				FileVisitOption.FOLLOW_LINKS)) {
-			stream.forEach(file -> readEnigmaFile(file, mappingAcceptor));
+		//ZipFile is safe to read from concurrently, unlike an open zip FileSystem's BufferedReaders
+		try (ZipFile zip = new ZipFile(dir.toFile())) {
+			List<ZipEntry> files = zip.stream().filter(entry -> !entry.isDirectory() && entry.getName().endsWith(".mapping")).sorted(Comparator.comparing(ZipEntry::getName)).collect(Collectors.toList());
+
+			//Parse each file in parallel, but pass them on in path order so the result is always the same
+			List<MappingBuffer> mappings = files.parallelStream().map(file -> {
+				MappingBuffer buffer = new MappingBuffer();
+
+				try (BufferedReader reader = new BufferedReader(new InputStreamReader(zip.getInputStream(file), StandardCharsets.UTF_8))) {
+					readEnigmaFile(reader, buffer);
+				} catch (IOException e) {
+					throw new UncheckedIOException("Error reading " + file.getName(), e);
+				}
+
+				return buffer;
+			}).collect(Collectors.toList());
+
+			for (MappingBuffer buffer : mappings) {
+				buffer.applyTo(mappingAcceptor);
+			}
 		} catch (UncheckedIOException e) {
 			throw e.getCause();
 		}
 	}
 
-	private static void readEnigmaFile(Path file, IMappingAcceptor mappingAcceptor) {
-		try (BufferedReader reader = Files.newBufferedReader(file)) {
-			String line;
-			Queue<String> contextStack = Collections.asLifoQueue(new ArrayDeque<>());
-			Queue<String> contextNamedStack = Collections.asLifoQueue(new ArrayDeque<>());
-			int indent = 0;
+	private static void readEnigmaFile(BufferedReader reader, IMappingAcceptor mappingAcceptor) throws IOException {
+		String line;
+		Queue<String> contextStack = Collections.asLifoQueue(new ArrayDeque<>());
+		Queue<String> contextNamedStack = Collections.asLifoQueue(new ArrayDeque<>());
+		int indent = 0;
 
-			while ((line = reader.readLine()) != null) {
-				if (line.isEmpty()) continue;
+		while ((line = reader.readLine()) != null) {
+			if (line.isEmpty()) continue;
 
-				int newIndent = 0;
-				while (newIndent < line.length() && line.charAt(newIndent) == '\t') newIndent++;
-				int indentChange = newIndent - indent;
+			int newIndent = 0;
+			while (newIndent < line.length() && line.charAt(newIndent) == '\t') newIndent++;
+			int indentChange = newIndent - indent;
 
-				if (indentChange != 0) {
-					if (indentChange < 0) {
-						for (int i = 0; i < -indentChange; i++) {
-							contextStack.remove();
-							contextNamedStack.remove();
-						}
-
-						indent = newIndent;
-					} else {
-						throw new IOException("invalid enigma line (invalid indentation change): "+line);
+			if (indentChange != 0) {
+				if (indentChange < 0) {
+					for (int i = 0; i < -indentChange; i++) {
+						contextStack.remove();
+						contextNamedStack.remove();
 					}
+
+					indent = newIndent;
+				} else {
+					throw new IOException("invalid enigma line (invalid indentation change): "+line);
 				}
+			}
 
-				line = line.substring(indent);
-				String[] parts = line.split(" ");
-
-				switch (parts[0]) {
-				case "CLASS":
-					if (parts.length < 2 || parts.length > 3) throw new IOException("invalid enigma line (missing/extra columns): "+line);
-					String obfName = parts[1];
-					if (indent >= 1) {//Inner classes have certain inconsistencies...
-						if (obfName.indexOf('/') > 0) {//Some inner classes carry the named outer class, others the obf'd outer class
-							int split = obfName.lastIndexOf('$');
-							assert split > 2; //Should be at least a/b$c
-							String context = contextStack.peek();
-							if (context == null || context.charAt(0) != 'C') throw new IOException("Invalid enigma line (named inner class without outer class name): " + line);
-							obfName = context.substring(1) + '$' + obfName.substring(split + 1);
-						} else if (obfName.indexOf('$') < 1) {//Some inner classes don't carry any outer name at all
-							assert obfName.indexOf('$') == -1 && obfName.indexOf('/') == -1;
-							String context = contextStack.peek();
-							if (context == null || context.charAt(0) != 'C') throw new IOException("Invalid enigma line (named inner class without outer class name): " + line);
-							obfName = context.substring(1) + '$' + obfName;
-						}
-					}
-					contextStack.add('C' + obfName);
-					indent++;
-					if (parts.length == 3) {
-						String className;
-						if (indent > 1) {//If we're an indent in, we're an inner class so want the outer classes's name
-							String context = contextNamedStack.peek();
-							if (context == null || context.charAt(0) != 'C') throw new IOException("Invalid enigma line (named inner class without outer class name): " + line);
-							//Named inner classes shouldn't ever carry the outer class's package + name
-							assert !parts[2].startsWith(context.substring(1)): "Pre-prefixed enigma class name: " + parts[2];
-							className = context.substring(1) + '$' + parts[2];
-						} else {
-							className = parts[2];
-						}
-						contextNamedStack.add('C' + className);
-						mappingAcceptor.acceptClass(obfName, className);
-					} else {
-						contextNamedStack.add('C' + obfName); //No name, but we still need something to avoid underflowing
+			line = line.substring(indent);
+			String[] parts = line.split(" ");
+
+			switch (parts[0]) {
+			case "CLASS":
+				if (parts.length < 2 || parts.length > 3) throw new IOException("invalid enigma line (missing/extra columns): "+line);
+				String obfName = parts[1];
+				if (indent >= 1) {//Inner classes have certain inconsistencies...
+					if (obfName.indexOf('/') > 0) {//Some inner classes carry the named outer class, others the obf'd outer class
+						int split = obfName.lastIndexOf('$');
+						assert split > 2; //Should be at least a/b$c
+						String context = contextStack.peek();
+						if (context == null || context.charAt(0) != 'C') throw new IOException("Invalid enigma line (named inner class without outer class name): " + line);
+						obfName = context.substring(1) + '$' + obfName.substring(split + 1);
+					} else if (obfName.indexOf('$') < 1) {//Some inner classes don't carry any outer name at all
+						assert obfName.indexOf('$') == -1 && obfName.indexOf('/') == -1;
+						String context = contextStack.peek();
+						if (context == null || context.charAt(0) != 'C') throw new IOException("Invalid enigma line (named inner class without outer class name): " + line);
+						obfName = context.substring(1) + '$' + obfName;
 					}
-					break;
-				case "METHOD": {
-					if (parts.length < 3 || parts.length > 4) throw new IOException("invalid enigma line (missing/extra columns): "+line);
-					if (!parts[parts.length - 1].startsWith("(")) throw new IOException("invalid enigma line (invalid method desc): "+line);
-					String context = contextStack.peek();
-					if (context == null || context.charAt(0) != 'C') throw new IOException("invalid enigma line (method without class): "+line);
-					contextStack.add("M"+parts[1]+parts[parts.length - 1]);
-					indent++;
-					if (parts.length == 4) {
-						mappingAcceptor.acceptMethod(context.substring(1), parts[1], parts[3], contextNamedStack.peek().substring(1), parts[2], null);
-						contextNamedStack.add('M' + parts[2]);
+				}
+				contextStack.add('C' + obfName);
+				indent++;
+				if (parts.length == 3) {
+					String className;
+					if (indent > 1) {//If we're an indent in, we're an inner class so want the outer classes's name
+						String context = contextNamedStack.peek();
+						if (context == null || context.charAt(0) != 'C') throw new IOException("Invalid enigma line (named inner class without outer class name): " + line);
+						//Named inner classes shouldn't ever carry the outer class's package + name
+						assert !parts[2].startsWith(context.substring(1)): "Pre-prefixed enigma class name: " + parts[2];
+						className = context.substring(1) + '$' + parts[2];
 					} else {
-						contextNamedStack.add('M' + parts[1]); //No name, but we still need something to avoid underflowing
+						className = parts[2];
 					}
-					break;
+					contextNamedStack.add('C' + className);
+					mappingAcceptor.acceptClass(obfName, className);
+				} else {
+					contextNamedStack.add('C' + obfName); //No name, but we still need something to avoid underflowing
+				}
+				break;
+			case "METHOD": {
+				if (parts.length < 3 || parts.length > 4) throw new IOException("invalid enigma line (missing/extra columns): "+line);
+				if (!parts[parts.length - 1].startsWith("(")) throw new IOException("invalid enigma line (invalid method desc): "+line);
+				String context = contextStack.peek();
+				if (context == null || context.charAt(0) != 'C') throw new IOException("invalid enigma line (method without class): "+line);
+				contextStack.add("M"+parts[1]+parts[parts.length - 1]);
+				indent++;
+				if (parts.length == 4) {
+					mappingAcceptor.acceptMethod(context.substring(1), parts[1], parts[3], contextNamedStack.peek().substring(1), parts[2], null);
+					contextNamedStack.add('M' + parts[2]);
+				} else {
+					contextNamedStack.add('M' + parts[1]); //No name, but we still need something to avoid underflowing
 				}
-				case "ARG":
-				case "VAR": {
-					if (parts.length < 2 || parts.length > 3) throw new IOException("invalid enigma line (missing/extra columns): "+line);
-					String methodContext = contextStack.poll();
-					if (methodContext == null || methodContext.charAt(0) != 'M') throw new IOException("invalid enigma line (arg without method): "+line);
-					String classContext = contextStack.peek();
-					if (classContext == null || classContext.charAt(0) != 'C') throw new IllegalStateException();
-					contextStack.add(methodContext);
-
-					int index = Integer.parseInt(parts[1]);
-					boolean isArg = parts[0].equals("ARG");
-
-					if (parts.length == 3) {
-						int methodDescStart = methodContext.indexOf('(');
-						assert methodDescStart != -1;
-
-						String srcClsName = classContext.substring(1);
-						String srcMethodName = methodContext.substring(1, methodDescStart);
-						String srcMethodDesc = methodContext.substring(methodDescStart);
-						String name = parts[2];
-
-						if (isArg) {
-							mappingAcceptor.acceptMethodArg(srcClsName, srcMethodName, srcMethodDesc, index, name);
-						} else {
-							throw new UnsupportedOperationException("Method var " + index + " in " + srcClsName + '#' + methodContext.substring(1));
-						}
-
-						contextNamedStack.add((isArg ? 'A' : 'V') + name);
+				break;
+			}
+			case "ARG":
+			case "VAR": {
+				if (parts.length < 2 || parts.length > 3) throw new IOException("invalid enigma line (missing/extra columns): "+line);
+				String methodContext = contextStack.poll();
+				if (methodContext == null || methodContext.charAt(0) != 'M') throw new IOException("invalid enigma line (arg without method): "+line);
+				String classContext = contextStack.peek();
+				if (classContext == null || classContext.charAt(0) != 'C') throw new IllegalStateException();
+				contextStack.add(methodContext);
+
+				int index = Integer.parseInt(parts[1]);
+				boolean isArg = parts[0].equals("ARG");
+
+				if (parts.length == 3) {
+					int methodDescStart = methodContext.indexOf('(');
+					assert methodDescStart != -1;
+
+					String srcClsName = classContext.substring(1);
+					String srcMethodName = methodContext.substring(1, methodDescStart);
+					String srcMethodDesc = methodContext.substring(methodDescStart);
+					String name = parts[2];
+
+					if (isArg) {
+						mappingAcceptor.acceptMethodArg(srcClsName, srcMethodName, srcMethodDesc, index, name);
 					} else {
-						contextNamedStack.add(isArg ? "A" : "V");
+						throw new UnsupportedOperationException("Method var " + index + " in " + srcClsName + '#' + methodContext.substring(1));
 					}
 
-					indent++;
-					contextStack.add((isArg ? "A" : "V") + index);
-					break;
+					contextNamedStack.add((isArg ? 'A' : 'V') + name);
+				} else {
+					contextNamedStack.add(isArg ? "A" : "V");
 				}
-				case "FIELD":
-					if (parts.length < 3 || parts.length > 4) throw new IOException("invalid enigma line (missing/extra columns): "+line);
-					String context = contextStack.peek();
-					if (context == null || context.charAt(0) != 'C') throw new IOException("invalid enigma line (field without class): "+line);
-					assert parts[1].indexOf('#') < 0;
-					assert parts[parts.length - 1].indexOf('#') < 0;
-					contextStack.add('F' + parts[1] + '#' + parts[parts.length - 1]);
-					indent++;
-					if (parts.length == 4) {
-						mappingAcceptor.acceptField(context.substring(1), parts[1], parts[3], contextNamedStack.peek().substring(1), parts[2], null);
-						contextNamedStack.add('F' + parts[2]);
-					} else {
-						contextNamedStack.add('F' + parts[1]); //No name, but we still need something to avoid underflowing
-					}
-					break;
-				case "COMMENT":
-					break;
-				default:
-					throw new IOException("invalid enigma line (unknown type): "+line);
+
+				indent++;
+				contextStack.add((isArg ? "A" : "V") + index);
+				break;
+			}
+			case "FIELD":
+				if (parts.length < 3 || parts.length > 4) throw new IOException("invalid enigma line (missing/extra columns): "+line);
+				String context = contextStack.peek();
+				if (context == null || context.charAt(0) != 'C') throw new IOException("invalid enigma line (field without class): "+line);
+				assert parts[1].indexOf('#') < 0;
+				assert parts[parts.length - 1].indexOf('#') < 0;
+				contextStack.add('F' + parts[1] + '#' + parts[parts.length - 1]);
+				indent++;
+				if (parts.length == 4) {
+					mappingAcceptor.acceptField(context.substring(1), parts[1], parts[3], contextNamedStack.peek().substring(1), parts[2], null);
+					contextNamedStack.add('F' + parts[2]);
+				} else {
+					contextNamedStack.add('F' + parts[1]); //No name, but we still need something to avoid underflowing
 				}
+				break;
+			case "COMMENT":
+				break;
+			default:
+				throw new IOException("invalid enigma line (unknown type): "+line);
 			}
-		} catch (IOException e) {
-			throw new UncheckedIOException(e);
 		}
 	}
 }
\ No newline at end of file
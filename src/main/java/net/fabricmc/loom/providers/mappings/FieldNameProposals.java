@@ -0,0 +1,227 @@
+/*
+ * This file is part of fabric-loom, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2019 Chocohead
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fabricmc.loom.providers.mappings;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.stream.Collectors;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import com.google.common.collect.Lists;
+import com.google.common.hash.HashCode;
+
+import org.apache.commons.io.IOUtils;
+import org.gradle.api.logging.Logger;
+
+import net.fabricmc.loom.util.Checksum;
+import net.fabricmc.mappings.EntryTriple;
+import net.fabricmc.stitch.util.FieldNameFinder;
+
+/**
+ * The field names Stitch's {@link FieldNameFinder} proposes for a Minecraft jar, as {@code CommandProposeFieldNames} would apply them.
+ *
+ * <p>Finding the names needs every class in the jar to be read, so the results are kept next to the jar by its hash.
+ * Changing the mappings alone then only needs the proposals {@link #apply(Path, Writer) applying} to the new base mappings.
+ * The cache holds the proposals grouped by official class name, so the owner of each is only written once.
+ */
+public class FieldNameProposals {
+	private static final int FORMAT = 1;
+	/** Proposed field names by official class name, then by {@link #key(String, String) field} */
+	private final Map<String, Map<String, String>> proposals;
+
+	private FieldNameProposals(Map<String, Map<String, String>> proposals) {
+		this.proposals = proposals;
+	}
+
+	private static String key(String name, String desc) {
+		return name + ';' + desc;
+	}
+
+	public static FieldNameProposals forJar(Logger logger, File jar) throws IOException {
+		HashCode hash = Checksum.sha1(jar);
+		File cache = new File(new File(jar.getParentFile(), "field-names"), hash + ".bin");
+
+		if (cache.exists()) {
+			try {
+				return read(cache);
+			} catch (IOException e) {
+				logger.warn("Unable to read cached field names from " + cache + ", will regenerate", e);
+			}
+		}
+
+		logger.lifecycle(":proposing field names");
+		FieldNameProposals proposals = new FieldNameProposals(find(jar));
+		proposals.write(cache);
+		return proposals;
+	}
+
+	private static Map<String, Map<String, String>> find(File jar) throws IOException {
+		List<byte[]> classes = new ArrayList<>();
+
+		try (ZipFile zip = new ZipFile(jar)) {
+			for (ZipEntry entry : Collections.list(zip.entries())) {
+				if (entry.isDirectory() || !entry.getName().endsWith(".class")) continue;
+
+				try (InputStream in = zip.getInputStream(entry)) {
+					classes.add(IOUtils.toByteArray(in));
+				}
+			}
+		}
+
+		//The finder only links a class's fields to its own static initialiser, so the classes can be split up freely
+		int chunk = Math.max(64, classes.size() / (Runtime.getRuntime().availableProcessors() * 4) + 1);
+		List<Map<EntryTriple, String>> found = Lists.partition(classes, chunk).parallelStream().map(part -> new FieldNameFinder().findNames(part)).collect(Collectors.toList());
+
+		Map<String, Map<String, String>> proposals = new HashMap<>();
+		for (Map<EntryTriple, String> names : found) {
+			for (Entry<EntryTriple, String> entry : names.entrySet()) {
+				EntryTriple field = entry.getKey();
+				proposals.computeIfAbsent(field.getOwner(), k -> new HashMap<>()).put(key(field.getName(), field.getDesc()), entry.getValue());
+			}
+		}
+
+		return proposals;
+	}
+
+	private static FieldNameProposals read(File from) throws IOException {
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(from.toPath())))) {
+			int format = in.readInt();
+			if (format != FORMAT) throw new IOException("Unexpected cache format: " + format);
+
+			int owners = in.readInt();
+			Map<String, Map<String, String>> proposals = new HashMap<>(owners);
+
+			for (int i = 0; i < owners; i++) {
+				String owner = in.readUTF();
+				int fields = in.readInt();
+				Map<String, String> names = new HashMap<>(fields);
+
+				for (int j = 0; j < fields; j++) {
+					names.put(key(in.readUTF(), in.readUTF()), in.readUTF());
+				}
+
+				proposals.put(owner, names);
+			}
+
+			if (in.read() != -1) throw new IOException("Trailing data after " + owners + " classes");
+			return new FieldNameProposals(proposals);
+		} catch (EOFException e) {
+			throw new IOException("Truncated cache", e);
+		}
+	}
+
+	private void write(File to) throws IOException {
+		//Write off to the side so an interrupted write is never read back
+		to.getParentFile().mkdirs();
+		Path temp = Files.createTempFile(to.getParentFile().toPath(), to.getName(), ".tmp");
+
+		try {
+			try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+				out.writeInt(FORMAT);
+				out.writeInt(proposals.size());
+
+				for (Entry<String, Map<String, String>> owner : proposals.entrySet()) {
+					out.writeUTF(owner.getKey());
+					out.writeInt(owner.getValue().size());
+
+					for (Entry<String, String> field : owner.getValue().entrySet()) {
+						String key = field.getKey();
+						int split = key.indexOf(';');
+
+						out.writeUTF(key.substring(0, split));
+						out.writeUTF(key.substring(split + 1));
+						out.writeUTF(field.getValue());
+					}
+				}
+			}
+
+			try {
+				Files.move(temp, to.toPath(), StandardCopyOption.ATOMIC_MOVE);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(temp, to.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			}
+		} finally {
+			Files.deleteIfExists(temp);
+		}
+	}
+
+	/**
+	 * Copies the given Tiny V1 mappings, giving any field without a named name (so still {@code field_*}) the proposed name.
+	 * The first namespace is expected to be official, as it is what the proposals are for. The writer is left open.
+	 */
+	public void apply(Path from, Writer writer) throws IOException {
+		try (BufferedReader reader = Files.newBufferedReader(from, StandardCharsets.UTF_8)) {
+			String line = reader.readLine();
+			if (line == null) throw new IOException("Empty mappings: " + from);
+
+			String[] header = line.split("\t");
+			if (header.length < 4) throw new IOException("Invalid header: " + line);
+
+			int named = -1;
+			for (int i = 1; i < header.length; i++) {
+				if ("named".equals(header[i])) {
+					named = i + 2; //FIELD owner desc official... so skip the extra two columns
+					break;
+				}
+			}
+			if (named < 0) throw new IOException("Could not find named namespace in " + from);
+
+			do {
+				if (line.startsWith("FIELD\t")) {
+					String[] parts = line.split("\t");
+					Map<String, String> names = proposals.get(parts[1]);
+					String name;
+
+					if (names != null && parts[named].startsWith("field_") && (name = names.get(key(parts[3], parts[2]))) != null) {
+						parts[named] = name;
+						line = String.join("\t", parts);
+					}
+				}
+
+				writer.write(line);
+				writer.write('\n');
+			} while ((line = reader.readLine()) != null);
+		}
+	}
+}
@@ -0,0 +1,174 @@
+/*
+ * This file is part of fabric-loom, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2019 Chocohead
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fabricmc.loom.providers.mappings;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.google.common.hash.HashCode;
+import com.google.common.net.UrlEscapers;
+
+import org.apache.commons.io.FileUtils;
+import org.gradle.api.logging.Logger;
+
+import net.fabricmc.loom.util.Checksum;
+
+/**
+ * Fetches the Intermediary mappings for any Minecraft version, keeping both the downloaded Tiny file and a {@link LayerCache} of it.
+ *
+ * <p>All the versions a mapping stack needs can be {@link #prefetch(Collection) prefetched} at once, which downloads and reads
+ * them in parallel. The prefetched mappings are kept for {@link #get(String, MappingBlob)} to return without reading them again.
+ * Once a version has been cached it is loaded from the compact form, skipping both the download and the Tiny parsing. Downloaded files are checked to be Intermediary mappings before they are kept, and the compact form is made
+ * again should the Tiny file be replaced.
+ */
+public class IntermediaryStore {
+	private static final String INTERMEDIARY = "net.fabricmc.intermediary";
+	private final Logger logger;
+	private final File cache;
+	private final Map<String, MappingBlob> loaded = new ConcurrentHashMap<>();
+
+	public IntermediaryStore(Logger logger, File userCache) {
+		this.logger = logger;
+		cache = new File(userCache, "mappings");
+	}
+
+	private File tinyFor(String version) {
+		return new File(cache, version + '/' + INTERMEDIARY + "-intermediary.tiny");
+	}
+
+	private File compactFor(String version) {
+		return new File(cache, version + '/' + INTERMEDIARY + "-intermediary.layer");
+	}
+
+	/** Whether the compact form of the given version exists and was made from the current Tiny file */
+	private boolean hasCompact(String version) {
+		File compact = compactFor(version);
+		return compact.exists() && compact.lastModified() >= tinyFor(version).lastModified();
+	}
+
+	/**
+	 * Makes sure each of the given versions is downloaded and cached, doing as many at once as possible.
+	 * Failures are only logged, as not every version might turn out to be needed; {@link #get(String, MappingBlob)} will try again if it is.
+	 *
+	 * <p>Each version parsed is kept for {@link #get(String, MappingBlob)}. As {@link SymbolTable}s can only be written by one thread
+	 * at a time, these have their own symbols rather than sharing those of the blob they are later used with.
+	 */
+	public void prefetch(Collection<String> versions) {
+		versions.parallelStream().distinct().filter(version -> !loaded.containsKey(version) && !hasCompact(version)).forEach(version -> {
+			try {
+				MappingBlob intermediaries = parse(version, null);
+				loaded.put(version, intermediaries); //Still usable even if it can't be cached
+				LayerCache.write(compactFor(version), intermediaries);
+			} catch (IOException e) {
+				logger.warn("Unable to fetch Intermediary mappings for " + version, e);
+			}
+		});
+	}
+
+	/**
+	 * Gets the SHA-1 of the Intermediary mappings for the given version, downloading them first if needed.
+	 * Returns {@code null} if they can't be downloaded, as with prefetching they might not turn out to be needed.
+	 */
+	public HashCode hash(String version) {
+		try {
+			return Checksum.sha1(download(version));
+		} catch (IOException e) {
+			logger.warn("Unable to fetch Intermediary mappings for " + version, e);
+			return null;
+		}
+	}
+
+	private File download(String version) throws IOException {
+		File tiny = tinyFor(version);
+
+		if (!tiny.exists()) {//Grab intermediary mappings from Github
+			logger.lifecycle(":downloading intermediaries for " + version);
+			tiny.getParentFile().mkdirs();
+			Path temp = Files.createTempFile(tiny.getParentFile().toPath(), tiny.getName(), ".tmp");
+
+			try {
+				FileUtils.copyURLToFile(new URL("https://github.com/FabricMC/intermediary/raw/master/mappings/" + UrlEscapers.urlPathSegmentEscaper().escape(version) + ".tiny"), temp.toFile());
+
+				List<String> namespaces = TinyReader.readHeaders(temp);
+				if (!namespaces.contains("official") || !namespaces.contains("intermediary")) {
+					throw new IOException("Downloaded Intermediary mappings for " + version + " have unexpected namespaces: " + namespaces);
+				}
+
+				try {
+					Files.move(temp, tiny.toPath(), StandardCopyOption.ATOMIC_MOVE);
+				} catch (AtomicMoveNotSupportedException e) {
+					Files.move(temp, tiny.toPath(), StandardCopyOption.REPLACE_EXISTING);
+				}
+			} finally {
+				Files.deleteIfExists(temp);
+			}
+		}
+
+		return tiny;
+	}
+
+	private MappingBlob parse(String version, MappingBlob symbolSource) throws IOException {
+		MappingBlob intermediaries = new MappingBlob(symbolSource);
+		TinyReader.readTiny(download(version).toPath(), "official", "intermediary", intermediaries);
+		return intermediaries;
+	}
+
+	/**
+	 * Gets the official to Intermediary mappings for the given version, sharing the symbols of the given blob.
+	 * A version which was {@link #prefetch(Collection) prefetched} is returned as it was read, with its own symbols.
+	 */
+	public MappingBlob get(String version, MappingBlob symbolSource) throws IOException {
+		MappingBlob intermediaries = loaded.get(version);
+
+		if (intermediaries == null) {
+			File compact = compactFor(version);
+
+			if (hasCompact(version)) {
+				try {
+					intermediaries = LayerCache.read(compact, symbolSource);
+				} catch (IOException e) {
+					logger.warn("Unable to read cached Intermediary mappings from " + compact + ", will regenerate", e);
+				}
+			}
+
+			if (intermediaries == null) {
+				intermediaries = parse(version, symbolSource);
+				LayerCache.write(compact, intermediaries);
+			}
+
+			loaded.put(version, intermediaries);
+		}
+
+		return intermediaries;
+	}
+}
@@ -0,0 +1,141 @@
+/*
+ * This file is part of fabric-loom, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2019 Chocohead
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fabricmc.loom.providers.mappings;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Objects;
+import java.util.function.BiConsumer;
+import java.util.stream.Stream;
+
+import com.google.common.collect.Iterators;
+import com.google.common.collect.Streams;
+
+import net.fabricmc.loom.providers.mappings.MappingBlob.Mapping.Field;
+import net.fabricmc.loom.providers.mappings.MappingBlob.Mapping.Method;
+
+/**
+ * A view of a {@link MappingBlob} going from the mapped names back to the original ones, see {@link MappingBlob#invert(MappingBlob.InvertionTarget...)}.
+ *
+ * <p>Only the class names are indexed up front, each class is inverted when asked for then left for the garbage collector
+ * unless it is changed. Classes without a mapped name are left out, as there would be nothing for them to invert to.
+ */
+final class InvertedBlob extends MappingBlob {
+	private final MappingBlob source;
+	private final boolean doFields, doMethods, doArgs;
+	private Map<String, String> names;
+
+	InvertedBlob(MappingBlob source, boolean doFields, boolean doMethods, boolean doArgs) {
+		super(source.symbols);
+
+		this.source = source;
+		this.doFields = doFields;
+		this.doMethods = doMethods;
+		this.doArgs = doArgs;
+	}
+
+	/** The original class name for each mapped name */
+	private Map<String, String> names() {
+		if (names == null) {
+			Map<String, String> names = new HashMap<>();
+
+			source.forEachClass((from, to) -> {
+				if (to != null) names.putIfAbsent(symbols.canonical(to), from);
+			});
+
+			this.names = names;
+		}
+
+		return names;
+	}
+
+	private Mapping translate(String name, String original) {
+		Mapping mapping = source.find(original);
+		Mapping invertion = new Mapping(symbols, name);
+		invertion.to = mapping.from;
+
+		if (doFields) {
+			for (Field field : mapping.fields()) {
+				if (field.name() == null) continue;
+
+				invertion.field(field.name(), source.mapDesc(field)).setMapping(field.fromName, field.fromDesc);
+			}
+		}
+
+		if (doMethods) {
+			for (Method method : mapping.methods()) {
+				if (method.name() == null) continue;
+
+				Method inverted = invertion.method(method.name(), source.mapDesc(method));
+				inverted.setMapping(method.fromName, method.fromDesc);
+				if (doArgs) inverted.args(method.args());
+			}
+		}
+
+		invertion.owner = this;
+		return invertion;
+	}
+
+	@Override
+	Mapping find(String srcName) {
+		Mapping mapping = mappings.get(srcName);
+		if (mapping != null) return mapping;
+
+		String original = names().get(srcName);
+		return original != null ? translate(srcName, original) : null;
+	}
+
+	@Override
+	boolean has(String srcName) {
+		return mappings.containsKey(srcName) || names().containsKey(srcName);
+	}
+
+	@Override
+	public String tryMapName(String srcName) {
+		Mapping mapping = mappings.get(srcName);
+		return mapping != null ? mapping.to : names().get(srcName);
+	}
+
+	@Override
+	void forEachClass(BiConsumer<String, String> action) {
+		super.forEachClass(action);
+
+		for (Entry<String, String> entry : names().entrySet()) {
+			if (!mappings.containsKey(entry.getKey())) action.accept(entry.getKey(), entry.getValue());
+		}
+	}
+
+	@Override
+	public Iterator<Mapping> iterator() {
+		Iterator<Mapping> translated = Iterators.transform(names().entrySet().iterator(), entry -> mappings.containsKey(entry.getKey()) ? null : translate(entry.getKey(), entry.getValue()));
+		return Iterators.concat(super.iterator(), Iterators.filter(translated, Objects::nonNull));
+	}
+
+	@Override
+	public Stream<Mapping> stream() {
+		return Streams.stream(this);
+	}
+}
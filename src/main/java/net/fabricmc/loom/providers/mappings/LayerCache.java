@@ -0,0 +1,144 @@
+/*
+ * This file is part of fabric-loom, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2019 Chocohead
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fabricmc.loom.providers.mappings;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+import net.fabricmc.loom.providers.mappings.MappingBlob.Mapping;
+import net.fabricmc.loom.providers.mappings.MappingBlob.Mapping.Field;
+import net.fabricmc.loom.providers.mappings.MappingBlob.Mapping.Method;
+
+/**
+ * Saves what a single layer of a mapping stack contributes, so it can be loaded back rather than read (and possibly renamed) again.
+ *
+ * <p>The layer is written exactly as it is given, every class with its methods and fields, each with its mapped name and descriptor
+ * if it has one. Method arguments are written by index. Reading the cache back gives a blob equal to the one written.
+ */
+public class LayerCache {
+	private static final int FORMAT = 1;
+
+	public static MappingBlob read(File cache, MappingBlob symbolSource) throws IOException {
+		MappingBlob layer = new MappingBlob(symbolSource);
+
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(cache.toPath())))) {
+			int format = in.readInt();
+			if (format != FORMAT) throw new IOException("Unexpected cache format: " + format);
+
+			while (in.readBoolean()) {
+				String from = in.readUTF();
+				layer.acceptClass(from, readNullable(in));
+				Mapping mapping = layer.get(from);
+
+				for (int methods = in.readInt(); methods > 0; methods--) {
+					Method method = mapping.method(in.readUTF(), in.readUTF());
+					method.setMapping(readNullable(in), readNullable(in));
+
+					for (int args = in.readInt(), index = 0; index < args; index++) {
+						String arg = readNullable(in);
+						if (arg != null) method.addArg(arg, index);
+					}
+				}
+
+				for (int fields = in.readInt(); fields > 0; fields--) {
+					mapping.field(in.readUTF(), in.readUTF()).setMapping(readNullable(in), readNullable(in));
+				}
+			}
+
+			if (in.read() != -1) throw new IOException("Trailing data after layer");
+		} catch (EOFException e) {
+			throw new IOException("Truncated cache", e);
+		}
+
+		return layer;
+	}
+
+	private static String readNullable(DataInputStream in) throws IOException {
+		return in.readBoolean() ? in.readUTF() : null;
+	}
+
+	public static void write(File to, MappingBlob layer) throws IOException {
+		//Write off to the side so an interrupted write is never read back
+		to.getParentFile().mkdirs();
+		Path temp = Files.createTempFile(to.getParentFile().toPath(), to.getName(), ".tmp");
+
+		try {
+			try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+				out.writeInt(FORMAT);
+
+				for (Mapping mapping : layer) {
+					out.writeBoolean(true);
+					out.writeUTF(mapping.from);
+					writeNullable(out, mapping.to);
+
+					out.writeInt(mapping.methods.size());
+					for (Method method : mapping.methods()) {
+						out.writeUTF(method.fromName);
+						out.writeUTF(method.fromDesc);
+						writeNullable(out, method.name());
+						writeNullable(out, method.desc());
+
+						String[] args = method.args();
+						out.writeInt(args.length);
+						for (String arg : args) {
+							writeNullable(out, arg);
+						}
+					}
+
+					out.writeInt(mapping.fields.size());
+					for (Field field : mapping.fields()) {
+						out.writeUTF(field.fromName);
+						out.writeUTF(field.fromDesc);
+						writeNullable(out, field.name());
+						writeNullable(out, field.desc());
+					}
+				}
+
+				out.writeBoolean(false);
+			}
+
+			try {
+				Files.move(temp, to.toPath(), StandardCopyOption.ATOMIC_MOVE);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(temp, to.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			}
+		} finally {
+			Files.deleteIfExists(temp);
+		}
+	}
+
+	private static void writeNullable(DataOutputStream out, String value) throws IOException {
+		out.writeBoolean(value != null);
+		if (value != null) out.writeUTF(value);
+	}
+}
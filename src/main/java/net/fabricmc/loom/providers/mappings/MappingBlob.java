@@ -29,6 +29,7 @@ import net.fabricmc.loom.providers.mappings.MappingBlob.Mapping.Field;
 import net.fabricmc.loom.providers.mappings.MappingBlob.Mapping.Method;
 
 import java.util.*;
+import java.util.function.BiConsumer;
 import java.util.function.ObjIntConsumer;
 import java.util.function.UnaryOperator;
 import java.util.stream.Stream;
@@ -125,12 +126,16 @@ public class MappingBlob implements IMappingAcceptor, Iterable<Mapping> {
 			}
 		}
 
+		private final SymbolTable symbols;
 		public final String from;
 		String to;
-		final Map<String, Method> methods = new HashMap<>();
-		final Map<String, Field> fields = new HashMap<>();
+		/** The view which translated this mapping, until it is changed and so has to be kept by the view */
+		MappingBlob owner;
+		final MemberTable<Method> methods = new MemberTable<>();
+		final MemberTable<Field> fields = new MemberTable<>();
 
-		public Mapping(String from) {
+		Mapping(SymbolTable symbols, String from) {
+			this.symbols = symbols;
 			this.from = from;
 		}
 
@@ -143,11 +148,15 @@ public class MappingBlob implements IMappingAcceptor, Iterable<Mapping> {
 		}
 
 		public Iterable<Method> methods() {
-			return methods.values();
+			return methods;
 		}
 
 		public boolean hasMethod(Method other) {
-			return methods.containsKey(other.fromName + other.fromDesc);
+			return findMethod(other) != null;
+		}
+
+		Method findMethod(Method other) {
+			return methods.get(symbols.find(other.fromName, other.fromDesc));
 		}
 
 		public Method method(Method other) {
@@ -155,15 +164,27 @@ public class MappingBlob implements IMappingAcceptor, Iterable<Mapping> {
 		}
 
 		Method method(String srcName, String srcDesc) {
-			return methods.computeIfAbsent(srcName + srcDesc, k -> new Method(srcName, srcDesc));
+			long key = symbols.intern(srcName, srcDesc);
+
+			Method method = methods.get(key);
+			if (method == null) {
+				if (owner != null) owner.adopt(this);
+				methods.add(key, method = new Method(symbols.get(SymbolTable.name(key)), symbols.get(SymbolTable.desc(key))));
+			}
+
+			return method;
 		}
 
 		public Iterable<Field> fields() {
-			return fields.values();
+			return fields;
 		}
 
 		public boolean hasField(Field other) {
-			return fields.containsKey(other.fromName + ";;" + other.fromDesc);
+			return findField(other) != null;
+		}
+
+		Field findField(Field other) {
+			return fields.get(symbols.find(other.fromName, other.fromDesc));
 		}
 
 		public Field field(Field other) {
@@ -171,14 +192,76 @@ public class MappingBlob implements IMappingAcceptor, Iterable<Mapping> {
 		}
 
 		Field field(String srcName, String srcDesc) {
-			return fields.computeIfAbsent(srcName + ";;" + srcDesc, k -> new Field(srcName, srcDesc));
+			long key = symbols.intern(srcName, srcDesc);
+
+			Field field = fields.get(key);
+			if (field == null) {
+				if (owner != null) owner.adopt(this);
+				fields.add(key, field = new Field(symbols.get(SymbolTable.name(key)), symbols.get(SymbolTable.desc(key))));
+			}
+
+			return field;
 		}
 	}
 
-	private final Map<String, Mapping> mappings = new HashMap<>();
+	final SymbolTable symbols;
+	/** The classes which have been added to this blob, for views only those which have been changed */
+	final Map<String, Mapping> mappings = new HashMap<>();
+	private final UnaryOperator<String> classRemapper = name -> {
+		String mapping = tryMapName(name);
+		return mapping != null ? mapping : name;
+	};
+	private Map<String, String> remappedDescs;
+
+	public MappingBlob() {
+		this(new SymbolTable());
+	}
+
+	/**
+	 * Creates an empty blob which shares the symbol table of the given blob (or a new table if it is {@code null}).
+	 * Strings common to both blobs are then only held once, and looking members up across the two is cheaper.
+	 */
+	public MappingBlob(MappingBlob symbolSource) {
+		this(symbolSource != null ? symbolSource.symbols : new SymbolTable());
+	}
+
+	MappingBlob(SymbolTable symbols) {
+		this.symbols = symbols;
+	}
 
 	public Mapping get(String srcName) {
-		return mappings.computeIfAbsent(srcName, Mapping::new);
+		Mapping mapping = find(srcName);
+
+		if (mapping == null) {
+			srcName = symbols.canonical(srcName);
+			mappings.put(srcName, mapping = new Mapping(symbols, srcName));
+		} else if (mapping.owner != null) {
+			adopt(mapping); //Might well be about to be changed
+		}
+
+		return mapping;
+	}
+
+	/** Finds the mapping for the given class name without creating it if it is missing, returning {@code null} instead */
+	Mapping find(String srcName) {
+		return mappings.get(srcName);
+	}
+
+	/** Whether the blob has a mapping for the given class name, even if it doesn't change the name */
+	boolean has(String srcName) {
+		return mappings.containsKey(srcName);
+	}
+
+	/** Keeps a mapping a view has translated, so that changes made to it are not lost */
+	void adopt(Mapping mapping) {
+		assert mapping.owner == this;
+		mapping.owner = null;
+		mappings.putIfAbsent(mapping.from, mapping);
+	}
+
+	/** Returns the instance of the given string the blob's symbol table holds, interning it if needed */
+	String intern(String symbol) {
+		return symbols.canonical(symbol);
 	}
 
 	public String tryMapName(String srcName) {
@@ -186,9 +269,34 @@ public class MappingBlob implements IMappingAcceptor, Iterable<Mapping> {
 		return mapping != null ? mapping.to : null;
 	}
 
+	/** Passes the name of every class in the blob to the given consumer along with what it maps to (which might be {@code null}) */
+	void forEachClass(BiConsumer<String, String> action) {
+		for (Mapping mapping : mappings.values()) {
+			action.accept(mapping.from, mapping.to);
+		}
+	}
+
+	/** Returns the given descriptor with every class remapped by this blob's names, remembering the result for next time */
+	String remapDesc(String desc) {
+		if (remappedDescs == null) remappedDescs = new HashMap<>();
+
+		String remapped = remappedDescs.get(desc);
+		if (remapped == null) {
+			remappedDescs.put(desc, remapped = symbols.canonical(MappingSplat.remapDesc(desc, classRemapper)));
+		}
+
+		return remapped;
+	}
+
+	/** Returns the mapped descriptor of the given member if it has one, otherwise the original descriptor remapped by this blob */
+	String mapDesc(Field member) {
+		return member.desc() != null ? member.desc() : remapDesc(member.fromDesc);
+	}
+
 	@Override
 	public void acceptClass(String srcName, String dstName) {
 		get(srcName).to = dstName;
+		remappedDescs = null;
 	}
 
 	@Override
@@ -223,13 +331,62 @@ public class MappingBlob implements IMappingAcceptor, Iterable<Mapping> {
 		return stream().map(Mapping::fields).flatMap(Streams::stream);
 	}
 
+	/**
+	 * Adds every name from the given blob which this blob doesn't already have one for, with earlier names taking priority.
+	 * If a filter is given, classes it has no name for and members it doesn't have are skipped, as the names have been lost.
+	 */
+	public void overlay(MappingBlob gains, MappingBlob filter) {
+		for (Mapping classMapping : gains) {
+			Mapping interMapping = null;
+			if (filter != null) {
+				interMapping = filter.find(classMapping.from);
+				if (interMapping == null || interMapping.to == null) continue;
+			}
+
+			Mapping existingClass = get(classMapping.from);
+			if (existingClass.to == null && !classMapping.from.equals(classMapping.to)) {
+				existingClass.to = classMapping.to;
+				remappedDescs = null;
+			}
+
+			for (Method method : classMapping.methods()) {
+				if (interMapping != null && !interMapping.hasMethod(method)) continue;
+
+				Method existingMethod = existingClass.method(method);
+				if (existingMethod.name() == null && !existingMethod.fromName.equals(method.name())) {
+					existingMethod.setMapping(method.name(), method.desc());
+				}
+
+				String[] args = method.args();
+				for (int index = 0; index < args.length; index++) {
+					if (args[index] != null && existingMethod.arg(index) == null) {
+						existingMethod.addArg(args[index], index);
+					}
+				}
+			}
+
+			for (Field field : classMapping.fields()) {
+				if (interMapping != null && !interMapping.hasField(field)) continue;
+
+				Field existingField = existingClass.field(field);
+				if (existingField.name() == null && !existingField.fromName.equals(field.name())) {
+					existingField.setMapping(field.name(), field.desc());
+				}
+			}
+		}
+	}
+
 	public enum InvertionTarget {
 		FIELDS, METHODS, MEMBERS, METHOD_ARGS, ALL;
 	}
 
+	/**
+	 * Returns a view of this blob going from the mapped names back to the original names, for the given targets.
+	 * The view translates each class as it is asked for rather than copying the whole blob, so this blob should not
+	 * be changed whilst the view is in use. Only classes which are changed through the view are kept by it.
+	 */
 	public MappingBlob invert(InvertionTarget... targets) {
 		Set<InvertionTarget> aims = EnumSet.noneOf(InvertionTarget.class);
-		MappingBlob invertion = new MappingBlob();
 
 		for (InvertionTarget target : targets) {
 			switch (target) {
@@ -249,100 +406,17 @@ public class MappingBlob implements IMappingAcceptor, Iterable<Mapping> {
 			}
 		}
 
-		boolean doFields = aims.contains(InvertionTarget.FIELDS);
-		boolean doMethods = aims.contains(InvertionTarget.METHODS);
-		boolean doArgs = aims.contains(InvertionTarget.METHOD_ARGS);
-
-		UnaryOperator<String> classRemapper = name -> {
-			String mapping = tryMapName(name);
-			return mapping != null ? mapping : name;
-		};
-
-		for (Mapping mapping : mappings.values()) {
-			if (mapping.to == null) {//If there is no mapped class name there is nothing for it to invert to
-				assert Streams.stream(mapping.fields()).map(Field::name).allMatch(Objects::isNull): mapping.from + " doesn't change name but has fields which do";
-				assert Streams.stream(mapping.methods()).map(Method::name).allMatch(Objects::isNull): mapping.from + " doesn't change name but has methods which do";
-				continue;
-			}
-
-			invertion.acceptClass(mapping.to, mapping.from);
-
-			if (doFields) {
-				for (Field field : mapping.fields()) {
-					if (field.name() == null) continue;
-					//assert field.desc() != null: mapping.from + '#' + field.fromName + " (" + field.fromDesc + ") changes name without a changed descriptor";
-
-					String desc = MappingSplat.makeDesc(field, classRemapper);
-					invertion.acceptField(mapping.to, field.name(), desc, mapping.from, field.fromName, field.fromDesc);
-				}
-			}
-
-			if (doMethods) {
-				for (Method method : mapping.methods()) {
-					if (method.name() == null) continue;
-					//assert method.desc() != null: mapping.from + '#' + method.fromName + method.fromDesc + " changes name without a changed descriptor";
-
-					String desc = MappingSplat.makeDesc(method, classRemapper);
-					invertion.acceptMethod(mapping.to, method.name(), desc, mapping.from, method.fromName, method.fromDesc);
-					if (doArgs) invertion.get(mapping.to).method(method.name(), desc).args(method.args());
-				}
-			}
-		}
-
-		return invertion;
+		return new InvertedBlob(this, aims.contains(InvertionTarget.FIELDS), aims.contains(InvertionTarget.METHODS), aims.contains(InvertionTarget.METHOD_ARGS));
 	}
 
+	/**
+	 * Returns a view of this blob with the original class and member names swapped for those of the given blob.
+	 * As with {@link #invert(InvertionTarget...)}, neither blob should be changed whilst the view is in use.
+	 */
 	public MappingBlob rename(MappingBlob blob) {
 		if (blob == null)
 			return this;
 
-		MappingBlob remap = new MappingBlob();
-
-		UnaryOperator<String> classRemapper = name -> {
-			String mapping = blob.tryMapName(name);
-			return mapping != null ? mapping : name;
-		};
-
-		for (Mapping mapping : mappings.values()) {
-			Mapping bridge = blob.mappings.get(mapping.from);
-			boolean useBridge = bridge != null;
-
-			String className = useBridge ? bridge.to : mapping.from;
-			remap.acceptClass(className, mapping.to);
-
-			for (Field field : mapping.fields()) {
-				if (useBridge && bridge.hasField(field)) {
-					Field bridged = bridge.field(field);
-
-					if (bridged.name() != null) {
-						assert bridged.desc() != null;
-						remap.acceptField(className, bridged.name(), bridged.desc(), mapping.to, field.name(), field.desc());
-						continue;
-					}
-				}
-
-				remap.acceptField(className, field.fromName, MappingSplat.remapDesc(field.fromDesc, classRemapper), mapping.to, field.name(), field.desc());
-			}
-
-			for (Method method : mapping.methods()) {
-				if (useBridge && bridge.hasMethod(method)) {
-					Method bridged = bridge.method(method);
-
-					if (bridged.name() != null) {
-						assert bridged.desc() != null;
-						remap.acceptMethod(className, bridged.name(), bridged.desc(), mapping.to, method.name(), method.desc());
-						remap.get(className).method(bridged.name(), bridged.desc()).args(method.args());
-						continue;
-					}
-				}
-
-				String desc = MappingSplat.remapDesc(method.fromDesc, classRemapper);
-				remap.acceptMethod(className, method.fromName, desc, mapping.to, method.name(), method.desc());
-				remap.get(className).method(method.fromName, desc).args(method.args());
-			}
-
-		}
-
-		return remap;
+		return new RenamedBlob(this, blob);
 	}
-}
\ No newline at end of file
+}
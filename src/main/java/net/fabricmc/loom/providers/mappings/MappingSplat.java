@@ -23,15 +23,15 @@
  */
 package net.fabricmc.loom.providers.mappings;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
-import java.util.Set;
 import java.util.StringJoiner;
+import java.util.function.Consumer;
 import java.util.function.UnaryOperator;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -139,9 +139,10 @@ public class MappingSplat implements Iterable<CombinedMapping> {
 		}
 
 		public final String from, fallback, to;
-		final Map<String, CombinedMethod> methods = new HashMap<>();
-		final Map<String, ArgOnlyMethod> bonusArgs = new HashMap<>();
-		final Map<String, CombinedField> fields = new HashMap<>();
+		//Members are only ever added once each (from either the fallback or the mappings), so need no keying
+		final List<CombinedMethod> methods = new ArrayList<>();
+		final List<ArgOnlyMethod> bonusArgs = new ArrayList<>();
+		final List<CombinedField> fields = new ArrayList<>();
 
 		public CombinedMapping(String from, String fallback, String to) {
 			this.from = from;
@@ -150,27 +151,35 @@ public class MappingSplat implements Iterable<CombinedMapping> {
 		}
 
 		public Iterable<CombinedMethod> methods() {
-			return methods.values();
+			return Collections.unmodifiableList(methods);
 		}
 
 		public Iterable<ArgOnlyMethod> bonusArgs() {
-			return bonusArgs.values();
+			return Collections.unmodifiableList(bonusArgs);
 		}
 
 		public Iterable<ArgOnlyMethod> allArgs() {
-			Set<ArgOnlyMethod> args = new HashSet<>(bonusArgs.values());
-			methods.values().stream().filter(CombinedMethod::hasArgs).map(ArgOnlyMethod::new).forEach(args::add);
-			return Collections.unmodifiableSet(args);
+			List<ArgOnlyMethod> args = new ArrayList<>(bonusArgs);
+			methods.stream().filter(CombinedMethod::hasArgs).map(ArgOnlyMethod::new).forEach(args::add);
+			return Collections.unmodifiableList(args);
 		}
 
 		public Iterable<CombinedField> fields() {
-			return fields.values();
+			return Collections.unmodifiableList(fields);
 		}
 	}
 
 	private final Map<String, CombinedMapping> mappings = new HashMap<>();
 
 	public MappingSplat(MappingBlob mappings, MappingBlob fallback) {
+		combine(mappings, fallback, combined -> this.mappings.put(combined.from, combined));
+	}
+
+	/**
+	 * Combines the given mappings over the fallback, passing each class to the given consumer as soon as it is finished.
+	 * Only one class is held at a time, rather than the whole set the constructor builds up to iterate over afterwards.
+	 */
+	public static void combine(MappingBlob mappings, MappingBlob fallback, Consumer<CombinedMapping> sink) {
 		UnaryOperator<String> fallbackRemapper = className -> {
 			String triedMapping = fallback.tryMapName(className);
 			return triedMapping != null ? triedMapping : className;
@@ -181,95 +190,93 @@ public class MappingSplat implements Iterable<CombinedMapping> {
 		};
 
 		//Fallback should cover all of mapping's class names, with the potential for more it doesn't have
+		mappings.forEachClass((notch, name) -> {
+			if (!fallback.has(notch)) {
+				throw new IllegalStateException("Extra mappings missing from fallback! Unable to find " + notch + " (" + name + ')');
+			}
+		});
+
+		//Sometimes Yarn versions include their own mappings without Intermediary backing (which is bad really)
+		Map<String, Pair<String, Map<String, String>>> yarnOnlyMappings = new HashMap<>();
+
 		for (Mapping mapping : fallback) {
 			String notch = mapping.from;
-			Mapping other = mappings.get(notch);
+			Mapping other = mappings.find(notch); //Only looked up once as it might well be a view
 
 			String inter = either(mapping.to, notch);
-			String name = findName(other.to, inter, notch, mappings);
+			String name = findName(other != null ? other.to : null, inter, notch, mappings);
 			assert !inter.equals(notch) || name.equals(notch);
 
 			CombinedMapping combined = new CombinedMapping(notch, inter, name);
-			this.mappings.put(notch, combined);
 
 			for (Method method : mapping.methods()) {
-				Method otherMethod = other.method(method);
+				Method otherMethod = other != null ? other.findMethod(method) : null;
 				notch = method.fromName;
 
 				if (notch.charAt(0) == '<') {
 					name = inter = notch;
 				} else {
 					inter = method.nameOr(notch);
-					name = otherMethod.nameOr(inter);
+					name = otherMethod != null ? otherMethod.nameOr(inter) : inter;
 				}
-				String interDesc = makeDesc(method, fallbackRemapper);
-				String nameDesc = makeDesc(otherMethod, remapper);
-				String[] args = either(otherMethod.args(), method.args());
+				String interDesc = mappings.intern(makeDesc(method, fallbackRemapper));
+				String nameDesc = mappings.intern(otherMethod != null ? makeDesc(otherMethod, remapper) : remapDesc(method.fromDesc, remapper));
+				String[] args = otherMethod != null ? otherMethod.args() : null;
 
 				CombinedMethod combinedMethod = new CombinedMethod(notch, method.fromDesc, inter, interDesc, name, nameDesc, args);
-				combined.methods.put(notch + method.fromDesc, combinedMethod);
+				combined.methods.add(combinedMethod);
 			}
 
 			for (Field field : mapping.fields()) {
-				Field otherField = other.field(field);
+				Field otherField = other != null ? other.findField(field) : null;
 				notch = field.fromName;
 
 				inter = field.nameOr(notch);
-				String interDesc = makeDesc(field, fallbackRemapper);
-				name = otherField.nameOr(inter);
-				String nameDesc = makeDesc(otherField, remapper);
+				String interDesc = mappings.intern(makeDesc(field, fallbackRemapper));
+				name = otherField != null ? otherField.nameOr(inter) : inter;
+				String nameDesc = mappings.intern(otherField != null ? makeDesc(otherField, remapper) : remapDesc(field.fromDesc, remapper));
 
 				CombinedField combinedField = new CombinedField(notch, field.fromDesc, inter, interDesc, name, nameDesc);
-				combined.fields.put(notch + ";;" + field.fromDesc, combinedField);
-			}
-		}
-
-		//Sometimes Yarn versions include their own mappings without Intermediary backing (which is bad really)
-		Map<String, Pair<String, Map<String, String>>> yarnOnlyMappings = new HashMap<>();
-
-		for (Mapping mapping : mappings) {
-			String notch = mapping.from;
-
-			Mapping other = fallback.get(notch);
-			CombinedMapping combined = this.mappings.get(notch);
-			if (other == null || combined == null) {
-				System.err.println("Missing " + (other == null ? combined == null ? "both" : "from mappings" : "from combined"));
-				throw new IllegalStateException("Extra mappings missing from fallback! Unable to find " + notch + " (" + mapping.to + ')');
+				combined.fields.add(combinedField);
 			}
 
-			for (Method method : mapping.methods()) {
-				if (other.hasMethod(method)) continue;
-				notch = method.fromName;
-
-				if (notch.charAt(0) == '<') {
-					//Args for constructors (and static blocks) won't appear in fallback from intermediary mappings not assigning constructor names
-					String interDesc = remapDesc(method.fromDesc, fallbackRemapper);
-					String nameDesc = makeDesc(method, remapper);
-
-					CombinedMethod combinedMethod = new CombinedMethod(notch, method.fromDesc, notch, interDesc, notch, nameDesc, method.args());
-					combined.methods.put(notch + method.fromDesc, combinedMethod);
-				} else {
-					if (!notch.equals(method.nameOr(notch))) {
-						//Changing Notch names without intermediaries to back it up is not cross-version safe and shouldn't be done
-						//throw new IllegalStateException("Extra mappings missing from fallback! Unable to find " + mapping.from + '#' + method.fromName + method.fromDesc + " (" + mapping.to + '#' + method.name() + ')');
-
-						//Yarn sometimes does however, so we'll just the cases where it does and not use them
-						yarnOnlyMappings.computeIfAbsent(mapping.from, k -> Pair.of(mapping.to, new HashMap<>())).getRight().put(method.fromName + method.fromDesc, method.name());
-					}
+			if (other != null) {
+				for (Method method : other.methods()) {
+					if (mapping.hasMethod(method)) continue;
+					notch = method.fromName;
+
+					if (notch.charAt(0) == '<') {
+						//Args for constructors (and static blocks) won't appear in fallback from intermediary mappings not assigning constructor names
+						String interDesc = mappings.intern(remapDesc(method.fromDesc, fallbackRemapper));
+						String nameDesc = mappings.intern(makeDesc(method, remapper));
+
+						CombinedMethod combinedMethod = new CombinedMethod(notch, method.fromDesc, notch, interDesc, notch, nameDesc, method.args());
+						combined.methods.add(combinedMethod);
+					} else {
+						if (!notch.equals(method.nameOr(notch))) {
+							//Changing Notch names without intermediaries to back it up is not cross-version safe and shouldn't be done
+							//throw new IllegalStateException("Extra mappings missing from fallback! Unable to find " + other.from + '#' + method.fromName + method.fromDesc + " (" + other.to + '#' + method.name() + ')');
+
+							//Yarn sometimes does however, so we'll just the cases where it does and not use them
+							yarnOnlyMappings.computeIfAbsent(other.from, k -> Pair.of(other.to, new HashMap<>())).getRight().put(method.fromName + method.fromDesc, method.name());
+						}
 
-					if (method.hasArgs()) {
-						ArgOnlyMethod bonusMethod = new ArgOnlyMethod(notch, method.fromDesc, method.args());
-						combined.bonusArgs.put(notch + method.fromDesc, bonusMethod);
+						if (method.hasArgs()) {
+							ArgOnlyMethod bonusMethod = new ArgOnlyMethod(notch, method.fromDesc, method.args());
+							combined.bonusArgs.add(bonusMethod);
+						}
 					}
 				}
-			}
 
-			for (Field field : mapping.fields()) {
-				if (other.hasField(field)) continue;
+				for (Field field : other.fields()) {
+					if (mapping.hasField(field)) continue;
 
-				yarnOnlyMappings.computeIfAbsent(mapping.from, k -> Pair.of(mapping.to, new HashMap<>())).getRight().put(field.fromDesc + ' ' + field.fromName, field.name());
-				//throw new IllegalStateException("Extra mapping missing from fallback! Unable to find " + mapping.from + '#' + field.fromName + " (" + field.fromDesc + ')');
+					yarnOnlyMappings.computeIfAbsent(other.from, k -> Pair.of(other.to, new HashMap<>())).getRight().put(field.fromDesc + ' ' + field.fromName, field.name());
+					//throw new IllegalStateException("Extra mapping missing from fallback! Unable to find " + other.from + '#' + field.fromName + " (" + field.fromDesc + ')');
+				}
 			}
+
+			sink.accept(combined);
 		}
 
 		if (!yarnOnlyMappings.isEmpty()) {//We should crash from this, but that's a nuisance as Yarn has to get fixed
@@ -337,12 +344,12 @@ public class MappingSplat implements Iterable<CombinedMapping> {
 						nameBits.add(segments[i]);
 					}
 
-					Mapping parent = mappings.get(nameBits.toString());
-					if (parent.to != null) {
+					String parent = mappings.tryMapName(nameBits.toString());
+					if (parent != null) {
 						String[] extra = inter.split("\\$");
 
 						nameBits = new StringJoiner("$");
-						nameBits.add(parent.to);
+						nameBits.add(parent);
 						for (int extraEnd = extra.length, i = extraEnd - depth; i < extraEnd; i++) {
 							nameBits.add(extra[i]);
 						}
@@ -365,6 +372,8 @@ public class MappingSplat implements Iterable<CombinedMapping> {
 
 	private static final Pattern CLASS_FINDER = Pattern.compile("L([^;]+);");
 	public static String remapDesc(String desc, UnaryOperator<String> classRemapper) {
+		if (desc.indexOf('L') < 0) return desc; //Only primitives, nothing to remap
+
 		StringBuffer buf = new StringBuffer();
 
 		Matcher matcher = CLASS_FINDER.matcher(desc);
@@ -0,0 +1,126 @@
+/*
+ * This file is part of fabric-loom, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2019 Chocohead
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fabricmc.loom.providers.mappings;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * An open addressed map from {@link SymbolTable#key(int, int) member keys} to members, iterating in insertion order.
+ *
+ * <p>Most classes only have a handful of members (and plenty have none of a given type), so nothing is allocated until
+ * the first member is added. Members are never removed.
+ */
+final class MemberTable<T> implements Iterable<T> {
+	private long[] keys; //Insertion ordered
+	private Object[] values;
+	private int[] table; //Index + 1 into keys/values for each slot, 0 when empty
+	private int size;
+
+	private static int mix(long key) {
+		key *= 0x9E3779B97F4A7C15L;
+		return (int) (key ^ key >>> 32);
+	}
+
+	@SuppressWarnings("unchecked")
+	public T get(long key) {
+		if (size == 0 || key == SymbolTable.MISSING) return null;
+		int mask = table.length - 1;
+
+		for (int slot = mix(key) & mask, index; (index = table[slot]) != 0; slot = slot + 1 & mask) {
+			if (keys[index - 1] == key) return (T) values[index - 1];
+		}
+
+		return null;
+	}
+
+	/** Adds the given member under the given key, which is expected to not already be present */
+	public void add(long key, T value) {
+		assert get(key) == null: "Duplicate member key " + key;
+
+		if (table == null) {
+			keys = new long[4];
+			values = new Object[4];
+			table = new int[8];
+		} else if (size == keys.length) {
+			grow();
+		}
+
+		keys[size] = key;
+		values[size] = value;
+		place(table, key, ++size);
+	}
+
+	private static void place(int[] table, long key, int index) {
+		int mask = table.length - 1;
+
+		int slot = mix(key) & mask;
+		while (table[slot] != 0) slot = slot + 1 & mask;
+		table[slot] = index;
+	}
+
+	private void grow() {
+		int capacity = keys.length << 1;
+
+		long[] keys = new long[capacity];
+		System.arraycopy(this.keys, 0, keys, 0, size);
+		this.keys = keys;
+
+		Object[] values = new Object[capacity];
+		System.arraycopy(this.values, 0, values, 0, size);
+		this.values = values;
+
+		table = new int[capacity << 1];
+		for (int i = 0; i < size; i++) {
+			place(table, keys[i], i + 1);
+		}
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	@Override
+	public Iterator<T> iterator() {
+		return new Iterator<T>() {
+			private int next;
+
+			@Override
+			public boolean hasNext() {
+				return next < size;
+			}
+
+			@Override
+			@SuppressWarnings("unchecked")
+			public T next() {
+				if (!hasNext()) throw new NoSuchElementException();
+				return (T) values[next++];
+			}
+		};
+	}
+}
@@ -0,0 +1,132 @@
+/*
+ * This file is part of fabric-loom, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2019 Chocohead
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fabricmc.loom.providers.mappings;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Compresses into gzip using every core, by splitting what is written into blocks and compressing each as its own gzip member.
+ *
+ * <p>Concatenated members are still a valid gzip file (which {@link java.util.zip.GZIPInputStream} reads as one), at the cost of
+ * each block starting without the previous block's dictionary. The members are written out in order, with only a few blocks
+ * waiting to be written at once, so memory stays bounded however much is written.
+ */
+final class ParallelGZIPOutputStream extends FilterOutputStream {
+	private static final int BLOCK_SIZE = 1 << 20;
+	private final int maxPending = ForkJoinPool.getCommonPoolParallelism() * 2;
+	private final Queue<CompletableFuture<byte[]>> pending = new ArrayDeque<>();
+	private byte[] block = new byte[BLOCK_SIZE];
+	private int length;
+
+	ParallelGZIPOutputStream(OutputStream out) {
+		super(out);
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		block[length++] = (byte) b;
+		if (length == BLOCK_SIZE) submit();
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		while (len > 0) {
+			int space = Math.min(len, BLOCK_SIZE - length);
+			System.arraycopy(b, off, block, length, space);
+			length += space;
+			off += space;
+			len -= space;
+
+			if (length == BLOCK_SIZE) submit();
+		}
+	}
+
+	private static byte[] compress(byte[] block, int length) {
+		ByteArrayOutputStream out = new ByteArrayOutputStream(length / 3 + 64);
+
+		try (GZIPOutputStream gzip = new GZIPOutputStream(out, 1 << 16)) {
+			gzip.write(block, 0, length);
+		} catch (IOException e) {
+			throw new UncheckedIOException("Error compressing block", e); //Only writing to memory so really shouldn't happen
+		}
+
+		return out.toByteArray();
+	}
+
+	private void submit() throws IOException {
+		byte[] block = this.block;
+		int length = this.length;
+		pending.add(CompletableFuture.supplyAsync(() -> compress(block, length)));
+
+		this.block = new byte[BLOCK_SIZE];
+		this.length = 0;
+
+		while (pending.size() > maxPending) {
+			writeNext();
+		}
+	}
+
+	private void writeNext() throws IOException {
+		try {
+			out.write(pending.remove().join());
+		} catch (CompletionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof UncheckedIOException) throw ((UncheckedIOException) cause).getCause();
+			throw e;
+		}
+	}
+
+	/** Writes out every block which has been completely filled, the final partial block is only written on {@link #close()} */
+	@Override
+	public void flush() throws IOException {
+		while (!pending.isEmpty()) {
+			writeNext();
+		}
+
+		out.flush();
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (block == null) return;
+
+		try {
+			if (length > 0 || pending.isEmpty()) submit(); //Always write at least one member, even if it's empty
+			flush();
+		} finally {
+			block = null;
+			out.close();
+		}
+	}
+}
@@ -0,0 +1,197 @@
+/*
+ * This file is part of fabric-loom, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2019 Chocohead
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fabricmc.loom.providers.mappings;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.BiConsumer;
+import java.util.stream.Stream;
+
+import com.google.common.collect.Iterators;
+import com.google.common.collect.Streams;
+
+import net.fabricmc.loom.providers.mappings.MappingBlob.Mapping.Field;
+import net.fabricmc.loom.providers.mappings.MappingBlob.Mapping.Method;
+
+/**
+ * A view of a {@link MappingBlob} with the original names swapped for those of another blob, see {@link MappingBlob#rename(MappingBlob)}.
+ *
+ * <p>Each class is renamed when asked for then left for the garbage collector unless it is changed. Descriptors are
+ * remapped through the renaming blob, so any shared between classes are only remapped once.
+ */
+final class RenamedBlob extends MappingBlob {
+	private final MappingBlob source, renamer;
+	private Map<String, String> originals;
+
+	RenamedBlob(MappingBlob source, MappingBlob renamer) {
+		super(source.symbols);
+
+		this.source = source;
+		this.renamer = renamer;
+	}
+
+	/** The original class name for each name the renamer gives */
+	private Map<String, String> originals() {
+		if (originals == null) {
+			Map<String, String> originals = new HashMap<>();
+
+			renamer.forEachClass((from, to) -> {
+				if (to != null) originals.putIfAbsent(to, from);
+			});
+
+			this.originals = originals;
+		}
+
+		return originals;
+	}
+
+	private String rename(String name) {
+		String renamed = renamer.tryMapName(name);
+		return renamed != null ? renamed : name;
+	}
+
+	/** Finds the source class which is renamed to the given name, or which keeps it as the renamer doesn't change it */
+	private Mapping findSource(String name) {
+		String original = originals().get(name);
+
+		if (original != null) {
+			Mapping mapping = source.find(original);
+			if (mapping != null) return mapping;
+		}
+
+		return renamer.tryMapName(name) == null ? source.find(name) : null;
+	}
+
+	private Mapping translate(String name, Mapping first) {
+		Mapping remap = new Mapping(symbols, name);
+		copy(remap, first);
+
+		if (!name.equals(first.from) && renamer.tryMapName(name) == null) {
+			//There might be a class which already had the name the first is being renamed to
+			Mapping second = source.find(name);
+			if (second != null) copy(remap, second);
+		}
+
+		remap.owner = this;
+		return remap;
+	}
+
+	private void copy(Mapping remap, Mapping mapping) {
+		Mapping bridge = renamer.find(mapping.from);
+		if (mapping.to != null) remap.to = mapping.to;
+
+		for (Field field : mapping.fields()) {
+			Field bridged = bridge != null ? bridge.findField(field) : null;
+			Field renamed;
+
+			if (bridged != null && bridged.name() != null) {
+				renamed = remap.field(bridged.name(), renamer.mapDesc(bridged));
+			} else {
+				renamed = remap.field(field.fromName, renamer.remapDesc(field.fromDesc));
+			}
+
+			renamed.setMapping(field.name(), field.desc());
+		}
+
+		for (Method method : mapping.methods()) {
+			Method bridged = bridge != null ? bridge.findMethod(method) : null;
+			Method renamed;
+
+			if (bridged != null && bridged.name() != null) {
+				renamed = remap.method(bridged.name(), renamer.mapDesc(bridged));
+			} else {
+				renamed = remap.method(method.fromName, renamer.remapDesc(method.fromDesc));
+			}
+
+			renamed.setMapping(method.name(), method.desc());
+			renamed.args(method.args());
+		}
+	}
+
+	@Override
+	Mapping find(String srcName) {
+		Mapping mapping = mappings.get(srcName);
+		if (mapping != null) return mapping;
+
+		mapping = findSource(srcName);
+		return mapping != null ? translate(srcName, mapping) : null;
+	}
+
+	@Override
+	boolean has(String srcName) {
+		if (mappings.containsKey(srcName)) return true;
+
+		String original = originals().get(srcName);
+		return original != null && source.has(original) || renamer.tryMapName(srcName) == null && source.has(srcName);
+	}
+
+	@Override
+	public String tryMapName(String srcName) {
+		Mapping mapping = mappings.get(srcName);
+		if (mapping != null) return mapping.to;
+
+		String original = originals().get(srcName);
+		String name = original != null ? source.tryMapName(original) : null;
+
+		if (name == null && renamer.tryMapName(srcName) == null) {
+			name = source.tryMapName(srcName);
+		}
+
+		return name;
+	}
+
+	@Override
+	void forEachClass(BiConsumer<String, String> action) {
+		super.forEachClass(action);
+
+		source.forEachClass((from, to) -> {
+			String name = rename(from);
+			if (!mappings.containsKey(name)) action.accept(name, to);
+		});
+	}
+
+	/** Whether the given source class is the one {@link #findSource(String)} would find for the name it is renamed to */
+	private boolean isFirst(Mapping mapping, String name) {
+		if (!name.equals(mapping.from)) return mapping.from.equals(originals().get(name));
+
+		String original = originals().get(name);
+		return original == null || original.equals(name) || !source.has(original);
+	}
+
+	@Override
+	public Iterator<Mapping> iterator() {
+		Iterator<Mapping> translated = Iterators.transform(source.iterator(), mapping -> {
+			String name = rename(mapping.from);
+			return mappings.containsKey(name) || !isFirst(mapping, name) ? null : translate(name, mapping);
+		});
+		return Iterators.concat(super.iterator(), Iterators.filter(translated, Objects::nonNull));
+	}
+
+	@Override
+	public Stream<Mapping> stream() {
+		return Streams.stream(this);
+	}
+}
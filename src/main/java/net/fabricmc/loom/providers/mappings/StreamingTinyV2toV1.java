@@ -0,0 +1,383 @@
+/*
+ * Copyright 2020 Chocohead
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package net.fabricmc.loom.providers.mappings;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * Converts Tiny V2 files to V1 working directly on the bytes of the file, rather than through the visitor API.
+ *
+ * <p>The file is split at top level classes into chunks which are converted in parallel, then joined back together
+ * in order. Anything unusual (such as missing names) results in giving up, leaving {@link TinyV2toV1} to do the
+ * conversion through the visitor as normal, so the output is always the same whichever way it is produced.
+ */
+class StreamingTinyV2toV1 {
+	private static final int CHUNK_SIZE = 1 << 18;
+	private static final byte[] NEW_LINE = System.lineSeparator().getBytes(StandardCharsets.UTF_8);
+	private static final byte[] CLASS = "CLASS".getBytes(StandardCharsets.UTF_8);
+	private static final byte[] METHOD = "METHOD".getBytes(StandardCharsets.UTF_8);
+	private static final byte[] FIELD = "FIELD".getBytes(StandardCharsets.UTF_8);
+
+	private static class Chunk {
+		public final ByteArrayOutputStream tiny;
+		public final ByteArrayOutputStream params;
+
+		Chunk(int size, boolean params) {
+			tiny = new ByteArrayOutputStream(size);
+			this.params = params ? new ByteArrayOutputStream() : null;
+		}
+	}
+
+	/** Marks that the file needs to be converted through the visitor instead */
+	private static class Unsupported extends Exception {
+		private static final long serialVersionUID = 1L;
+		static final Unsupported INSTANCE = new Unsupported();
+
+		private Unsupported() {
+			super(null, null, false, false);
+		}
+	}
+
+	/**
+	 * @return Whether the input was converted, if not nothing will have been written
+	 */
+	static boolean convert(Path input, Path output, Path params) throws IOException {
+		byte[] data = Files.readAllBytes(input);
+
+		int headerEnd = lineEnd(data, 0);
+		if (!startsWith(data, 0, "tiny\t2\t") || headerEnd == 0 || data[headerEnd - 1] == '\r') return false;
+		List<byte[]> namespaces = split(data, 0, headerEnd);
+		if (namespaces.size() < 3) return false;
+		namespaces = namespaces.subList(3, namespaces.size());
+
+		int named = -1, official = -1;
+		for (int i = 0; i < namespaces.size(); i++) {
+			String namespace = new String(namespaces.get(i), StandardCharsets.UTF_8);
+
+			if ("named".equals(namespace)) {
+				named = i;
+			} else if ("official".equals(namespace)) {
+				official = i;
+			}
+		}
+		if (params != null && (named < 0 || official < 0)) return false;
+
+		boolean escaped = false;
+		int start = headerEnd + 1;
+		while (start < data.length && data[start] == '\t') {//Properties
+			int end = lineEnd(data, start);
+			if (end - start == 14 && startsWith(data, start, "\tescaped-names")) escaped = true;
+			start = end + 1;
+		}
+
+		int[] bounds = split(data, start);
+		boolean escapedNames = escaped;
+		int namespaceCount = namespaces.size(), namedIndex = named, officialIndex = official;
+
+		Chunk[] chunks;
+		try {
+			chunks = IntStream.range(0, bounds.length - 1).parallel().mapToObj(i -> {
+				try {
+					return convert(data, bounds[i], bounds[i + 1], namespaceCount, escapedNames, params != null, namedIndex, officialIndex);
+				} catch (Unsupported e) {
+					return null;
+				}
+			}).toArray(Chunk[]::new);
+		} catch (ArrayIndexOutOfBoundsException | NumberFormatException e) {
+			return false; //Something is malformed, the visitor will explain better
+		}
+		if (Arrays.asList(chunks).contains(null)) return false;
+
+		try (OutputStream out = Files.newOutputStream(output)) {
+			out.write("v1".getBytes(StandardCharsets.UTF_8));
+			for (byte[] namespace : namespaces) {
+				out.write('\t');
+				out.write(namespace);
+			}
+			out.write(NEW_LINE);
+
+			for (Chunk chunk : chunks) {
+				chunk.tiny.writeTo(out);
+			}
+		}
+
+		if (params != null) {
+			try (OutputStream out = Files.newOutputStream(params)) {
+				for (Chunk chunk : chunks) {
+					chunk.params.writeTo(out);
+				}
+			}
+		}
+
+		return true;
+	}
+
+	private static int lineEnd(byte[] data, int from) {
+		while (from < data.length && data[from] != '\n') from++;
+		return from;
+	}
+
+	private static boolean startsWith(byte[] data, int from, String prefix) {
+		if (data.length - from < prefix.length()) return false;
+
+		for (int i = 0; i < prefix.length(); i++) {
+			if (data[from + i] != prefix.charAt(i)) return false;
+		}
+
+		return true;
+	}
+
+	private static List<byte[]> split(byte[] data, int from, int to) {
+		List<byte[]> out = new ArrayList<>();
+
+		for (int start = from, i = from; i <= to; i++) {
+			if (i == to || data[i] == '\t') {
+				out.add(Arrays.copyOfRange(data, start, i));
+				start = i + 1;
+			}
+		}
+
+		return out;
+	}
+
+	/** Find roughly evenly sized chunks which each start with a top level class */
+	private static int[] split(byte[] data, int from) {
+		List<Integer> bounds = new ArrayList<>();
+		bounds.add(from);
+
+		for (int next = from + CHUNK_SIZE; next < data.length;) {
+			while (next < data.length && !(data[next - 1] == '\n' && data[next] == 'c')) next++;
+			if (next >= data.length) break;
+
+			bounds.add(next);
+			next += CHUNK_SIZE;
+		}
+
+		bounds.add(data.length);
+		return bounds.stream().mapToInt(Integer::intValue).toArray();
+	}
+
+	private static Chunk convert(byte[] data, int from, int to, int namespaces, boolean escaped, boolean params, int named, int official) throws Unsupported {
+		Chunk chunk = new Chunk(to - from, params);
+		int[] fields = new int[(namespaces + 3) * 2];
+
+		//The class and method currently having parameters collected
+		int classStart = -1, classEnd = -1;
+		int methodStart = -1, methodEnd = -1, descStart = -1, descEnd = -1;
+		int[] args = new int[16];
+		int argCount = 0;
+
+		for (int start = from; start < to;) {
+			int end = lineEnd(data, start);
+			if (end > start && data[end - 1] == '\r') throw Unsupported.INSTANCE;
+			if (end == start) {//Blank lines are only expected at the end of the file
+				if (end + 1 < data.length) throw Unsupported.INSTANCE;
+				start = end + 1;
+				continue;
+			}
+
+			int indent = start;
+			while (indent < end && data[indent] == '\t') indent++;
+			indent -= start;
+
+			if (indent > 2) {//Only comments are nested this far
+				start = end + 1;
+				continue;
+			}
+
+			int fieldCount = fields(data, start + indent, end, fields);
+			int typeLength = fields[1] - fields[0];
+			byte type = typeLength == 1 ? data[fields[0]] : 0;
+
+			switch (indent) {
+			case 0:
+				if (type != 'c') throw Unsupported.INSTANCE;
+				checkNames(fields, 1, fieldCount, namespaces);
+
+				writeLine(chunk.tiny, data, CLASS, fields, 1, fieldCount, escaped);
+				if (params) {
+					writeParams(chunk.params, data, classStart, classEnd, methodStart, methodEnd, descStart, descEnd, args, argCount, escaped);
+					methodStart = -1;
+					classStart = fields[(1 + named) * 2];
+					classEnd = fields[(1 + named) * 2 + 1];
+				}
+				break;
+
+			case 1:
+				switch (type) {
+				case 'm':
+				case 'f':
+					checkNames(fields, 2, fieldCount, namespaces);
+					writeLine(chunk.tiny, data, type == 'm' ? METHOD : FIELD, fields, 1, fieldCount, escaped);
+
+					if (params) {
+						writeParams(chunk.params, data, classStart, classEnd, methodStart, methodEnd, descStart, descEnd, args, argCount, escaped);
+						methodStart = -1;
+
+						if (type == 'm') {
+							methodStart = fields[(2 + official) * 2];
+							methodEnd = fields[(2 + official) * 2 + 1];
+							descStart = fields[2];
+							descEnd = fields[3];
+							argCount = 0;
+						}
+					}
+					break;
+
+				case 'c':
+					break;
+
+				default:
+					throw Unsupported.INSTANCE;
+				}
+				break;
+
+			case 2:
+				switch (type) {
+				case 'p':
+					if (params && methodStart >= 0) {
+						if (fieldCount != namespaces + 2) throw Unsupported.INSTANCE;
+						int nameStart = fields[(2 + named) * 2], nameEnd = fields[(2 + named) * 2 + 1];
+
+						if (nameStart < nameEnd) {
+							int index = Integer.parseInt(new String(data, fields[2], fields[3] - fields[2], StandardCharsets.US_ASCII));
+
+							if (index > 0) {
+								if (args.length < (argCount + 1) * 3) args = Arrays.copyOf(args, args.length * 2);
+								args[argCount * 3] = index;
+								args[argCount * 3 + 1] = nameStart;
+								args[argCount * 3 + 2] = nameEnd;
+								argCount++;
+							}
+						}
+					}
+					break;
+
+				case 'v':
+				case 'c':
+					break;
+
+				default:
+					throw Unsupported.INSTANCE;
+				}
+				break;
+			}
+
+			start = end + 1;
+		}
+
+		if (params) writeParams(chunk.params, data, classStart, classEnd, methodStart, methodEnd, descStart, descEnd, args, argCount, escaped);
+		return chunk;
+	}
+
+	/** Fills the given array with the start and end of each tab separated field, returning how many fields there are */
+	private static int fields(byte[] data, int from, int to, int[] fields) throws Unsupported {
+		int count = 0;
+
+		for (int start = from, i = from; i <= to; i++) {
+			if (i == to || data[i] == '\t') {
+				if (count * 2 >= fields.length) throw Unsupported.INSTANCE;
+
+				fields[count * 2] = start;
+				fields[count * 2 + 1] = i;
+				count++;
+				start = i + 1;
+			}
+		}
+
+		return count;
+	}
+
+	private static void checkNames(int[] fields, int from, int count, int namespaces) throws Unsupported {
+		if (count - from != namespaces) throw Unsupported.INSTANCE;
+
+		for (int i = from; i < count; i++) {
+			if (fields[i * 2] == fields[i * 2 + 1]) throw Unsupported.INSTANCE; //Visitor might fill missing names in
+		}
+	}
+
+	private static void writeLine(ByteArrayOutputStream out, byte[] data, byte[] type, int[] fields, int from, int count, boolean escaped) {
+		out.write(type, 0, type.length);
+
+		for (int i = from; i < count; i++) {
+			out.write('\t');
+			write(out, data, fields[i * 2], fields[i * 2 + 1], escaped);
+		}
+
+		out.write(NEW_LINE, 0, NEW_LINE.length);
+	}
+
+	private static void writeParams(ByteArrayOutputStream out, byte[] data, int classStart, int classEnd, int methodStart, int methodEnd, int descStart, int descEnd, int[] args, int argCount, boolean escaped) {
+		if (methodStart < 0 || argCount == 0) return;
+
+		write(out, data, classStart, classEnd, escaped);
+		out.write('/');
+		write(out, data, methodStart, methodEnd, escaped);
+		write(out, data, descStart, descEnd, escaped);
+		out.write(NEW_LINE, 0, NEW_LINE.length);
+
+		//Written with the biggest index first, with later duplicates taking priority
+		int[] order = IntStream.range(0, argCount).boxed().sorted((a, b) -> args[b * 3] != args[a * 3] ? Integer.compare(args[b * 3], args[a * 3]) : Integer.compare(b, a)).mapToInt(Integer::intValue).toArray();
+		for (int i = 0, last = -1; i < order.length; i++) {
+			int arg = order[i] * 3;
+			if (args[arg] == last) continue;
+			last = args[arg];
+
+			out.write('\t');
+			byte[] index = (args[arg] + ": ").getBytes(StandardCharsets.US_ASCII);
+			out.write(index, 0, index.length);
+			write(out, data, args[arg + 1], args[arg + 2], escaped);
+			out.write(NEW_LINE, 0, NEW_LINE.length);
+		}
+	}
+
+	private static void write(ByteArrayOutputStream out, byte[] data, int from, int to, boolean escaped) {
+		if (!escaped) {
+			out.write(data, from, to - from);
+			return;
+		}
+
+		for (int i = from; i < to; i++) {
+			byte b = data[i];
+
+			if (b == '\\' && i + 1 < to) {
+				switch (data[++i]) {
+				case 'n':
+					b = '\n';
+					break;
+
+				case 'r':
+					b = '\r';
+					break;
+
+				case 't':
+					b = '\t';
+					break;
+
+				case '0':
+					b = 0;
+					break;
+
+				default: //Should only be \\
+					b = data[i];
+				}
+			}
+
+			out.write(b);
+		}
+	}
+}
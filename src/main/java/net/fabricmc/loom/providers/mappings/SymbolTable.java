@@ -0,0 +1,128 @@
+/*
+ * This file is part of fabric-loom, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2019 Chocohead
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fabricmc.loom.providers.mappings;
+
+import java.util.Arrays;
+
+/**
+ * Interns the member names and descriptors of one or more {@link MappingBlob}s, handing each distinct string an ID.
+ *
+ * <p>A name and descriptor pair can then be packed into a single {@code long} {@link #key(int, int) key} to look members
+ * up by without building a concatenated string. Neither {@link #find(String)} nor {@link #find(String, String)} allocate,
+ * relying on the hash code {@link String} caches. Not thread safe, blobs sharing a table must be written to by one thread.
+ */
+final class SymbolTable {
+	/** Returned by {@link #find(String, String)} when either half has never been interned */
+	static final long MISSING = -1;
+
+	private String[] symbols = new String[1024];
+	private int[] table = new int[2048]; //ID + 1 for each slot, 0 when empty
+	private int size;
+
+	static long key(int name, int desc) {
+		return (long) name << 32 | desc & 0xFFFFFFFFL;
+	}
+
+	static int name(long key) {
+		return (int) (key >>> 32);
+	}
+
+	static int desc(long key) {
+		return (int) key;
+	}
+
+	private static int mix(int hash) {
+		hash *= 0x9E3779B9;
+		return hash ^ hash >>> 16;
+	}
+
+	public int find(String symbol) {
+		int mask = table.length - 1;
+
+		for (int slot = mix(symbol.hashCode()) & mask, id; (id = table[slot]) != 0; slot = slot + 1 & mask) {
+			String existing = symbols[id - 1];
+			if (existing == symbol || existing.equals(symbol)) return id - 1;
+		}
+
+		return -1;
+	}
+
+	public long find(String name, String desc) {
+		int nameID = find(name);
+		if (nameID < 0) return MISSING;
+
+		int descID = find(desc);
+		if (descID < 0) return MISSING;
+
+		return key(nameID, descID);
+	}
+
+	public int intern(String symbol) {
+		int mask = table.length - 1;
+
+		int slot = mix(symbol.hashCode()) & mask;
+		for (int id; (id = table[slot]) != 0; slot = slot + 1 & mask) {
+			String existing = symbols[id - 1];
+			if (existing == symbol || existing.equals(symbol)) return id - 1;
+		}
+
+		if (size == symbols.length) symbols = Arrays.copyOf(symbols, size << 1);
+		symbols[size] = symbol;
+		table[slot] = ++size;
+
+		if (size << 1 > table.length) rehash();
+		return size - 1;
+	}
+
+	public long intern(String name, String desc) {
+		return key(intern(name), intern(desc));
+	}
+
+	/** Returns the instance of the given string this table holds, so equal strings from different sources can share one copy */
+	public String canonical(String symbol) {
+		int id = intern(symbol); //Might grow symbols
+		return symbols[id];
+	}
+
+	public String get(int id) {
+		return symbols[id];
+	}
+
+	public int size() {
+		return size;
+	}
+
+	private void rehash() {
+		int[] table = new int[this.table.length << 1];
+		int mask = table.length - 1;
+
+		for (int id = 0; id < size; id++) {
+			int slot = mix(symbols[id].hashCode()) & mask;
+			while (table[slot] != 0) slot = slot + 1 & mask;
+			table[slot] = id + 1;
+		}
+
+		this.table = table;
+	}
+}
@@ -17,6 +17,7 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Objects;
 
 import net.fabricmc.mappings.visitor.ClassVisitor;
 import net.fabricmc.mappings.visitor.FieldVisitor;
@@ -32,6 +33,12 @@ public class TinyV2toV1 {
 	}
 
 	public static void convert(Path input, Path output, Path params) {
+		try {
+			if (StreamingTinyV2toV1.convert(input, output, params)) return;
+		} catch (IOException e) {
+			throw new UncheckedIOException("Error converting " + input + " to " + output, e);
+		}
+
 		try (Reader in = new InputStreamReader(Files.newInputStream(input), StandardCharsets.UTF_8);
 				BufferedWriter out = Files.newBufferedWriter(output);
 				BufferedWriter paramOut = params != null ? Files.newBufferedWriter(params) : null) {
@@ -89,7 +96,7 @@ public class TinyV2toV1 {
 							private final int named = namespaces.indexOf("named"), official = namespaces.indexOf("official");
 							private final String className = names[named];
 							private final String method, desc;
-							private String[] args;
+							private String[] args = new String[0];
 
 							public ParamHolder(String[] methodNames, String desc) {
 								this.method = methodNames[official];
@@ -103,7 +110,7 @@ public class TinyV2toV1 {
 									args = Arrays.copyOf(args, index + 1);
 								}
 
-								args[index] = names[named];
+								if (!names[named].isEmpty()) args[index] = names[named];
 								return null;
 							}
 
@@ -117,6 +124,8 @@ public class TinyV2toV1 {
 							}
 
 							public void write() {
+								if (Arrays.stream(args, Math.min(1, args.length), args.length).allMatch(Objects::isNull)) return; //Nothing to write
+
 								try {
 									paramOut.write(className);
 									paramOut.write('/');
@@ -127,7 +136,7 @@ public class TinyV2toV1 {
 									for (int i = args.length - 1; i > 0; i--) {
 										if (args[i] != null) {
 											paramOut.write('\t');
-											paramOut.write(args[i]);
+											paramOut.write(i + ": " + args[i]);
 											paramOut.newLine();
 										}
 									}
@@ -180,7 +189,10 @@ public class TinyV2toV1 {
 
 						private void writeParams() {
 							assert writeParams;
-							if (currentMethod != null) currentMethod.write();
+							if (currentMethod != null) {
+								currentMethod.write();
+								currentMethod = null; //Only ever written once, however many fields follow
+							}
 							finaliser = null;
 						}
 
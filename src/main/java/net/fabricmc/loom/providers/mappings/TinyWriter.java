@@ -23,8 +23,11 @@
  */
 package net.fabricmc.loom.providers.mappings;
 
+import java.io.BufferedOutputStream;
 import java.io.BufferedWriter;
+import java.io.Closeable;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.UncheckedIOException;
 import java.io.Writer;
@@ -36,9 +39,14 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.stream.Collectors;
-import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.apache.commons.io.output.TeeOutputStream;
 
 public class TinyWriter implements AutoCloseable {
+	/** Mapping files run into the tens of megabytes, so it is worth writing them out in large chunks */
+	private static final int BUFFER_SIZE = 1 << 16;
 	private final String[] namespaces;
 	private final Writer writer;
 
@@ -54,7 +62,8 @@ public class TinyWriter implements AutoCloseable {
 			throw new IllegalArgumentException(uniqueNamespaces.stream().filter(namespace -> Collections.frequency(namespacePool, namespace) > 1).collect(Collectors.joining(", ", "Duplicate namespaces: ", "")));
 		}
 
-		writer = !compress ? Files.newBufferedWriter(file) : new BufferedWriter(new OutputStreamWriter(new GZIPOutputStream(Files.newOutputStream(file)), StandardCharsets.UTF_8));
+		OutputStream out = Files.newOutputStream(file);
+		writer = new BufferedWriter(new OutputStreamWriter(!compress ? out : new ParallelGZIPOutputStream(out), StandardCharsets.UTF_8), BUFFER_SIZE);
 		writer.write("v1");
 		for (String namespace : this.namespaces = namespaces) {
 			writer.write('\t');
@@ -63,6 +72,37 @@ public class TinyWriter implements AutoCloseable {
 		writer.write('\n');
 	}
 
+	/**
+	 * Opens a writer for a plain Tiny file which also writes everything into the {@code mappings/mappings.tiny} entry of the given jar,
+	 * replacing the jar if it already exists. The text is only encoded once, and the jar doesn't have to be made from the file after.
+	 */
+	public static Writer newJarWriter(Path file, Path jar) throws IOException {
+		OutputStream out = Files.newOutputStream(file);
+		ZipOutputStream zip = null;
+
+		try {
+			zip = new ZipOutputStream(new BufferedOutputStream(Files.newOutputStream(jar), BUFFER_SIZE));
+			zip.putNextEntry(new ZipEntry("mappings/"));
+			zip.closeEntry();
+			zip.putNextEntry(new ZipEntry("mappings/mappings.tiny"));
+
+			return new BufferedWriter(new OutputStreamWriter(new TeeOutputStream(out, zip), StandardCharsets.UTF_8), BUFFER_SIZE);
+		} catch (IOException | RuntimeException e) {
+			//Nothing has been handed out yet, so both streams are ours to close
+			for (Closeable stream : new Closeable[] {zip, out}) {
+				if (stream == null) continue;
+
+				try {
+					stream.close();
+				} catch (IOException suppressed) {
+					e.addSuppressed(suppressed);
+				}
+			}
+
+			throw e;
+		}
+	}
+
 	private void ensureComplete(String... names) {
 		if (names.length < namespaces.length) {
 			throw new IllegalArgumentException("Missing names for namespaces " + Arrays.asList(namespaces).subList(names.length, namespaces.length));
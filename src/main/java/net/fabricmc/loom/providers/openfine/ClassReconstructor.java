@@ -8,7 +8,9 @@
 package net.fabricmc.loom.providers.openfine;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -113,68 +115,115 @@ public class ClassReconstructor {
 		fix(node.name, "method", node.methods, basisNode.methods, method -> method.name + method.desc);
 	}
 
-	private static class Swap {
-		public final int a, b;
+	private static <T> void fix(String name, String type, List<T> client, List<T> server, Function<T, String> mapper) {
+		int[] order = fix(client.stream().map(mapper).collect(Collectors.toList()), server.stream().map(mapper).collect(Collectors.toList()));
 
-		public Swap(int a, int b) {
-			this.a = a;
-			this.b = b;
-		}
+		if (order != null) {
+			List<T> original = new ArrayList<>(client);
+
+			for (int i = 0; i < order.length; i++) {
+				client.set(i, original.get(order[i]));
+			}
 
-		@Override
-		public String toString() {
-			return "Swap[" + a + " <=> " + b + ']';
+			System.out.println("Resolved " + type + " issues in " + name);
 		}
 	}
 
-	private static <T> void fix(String name, String type, List<T> client, List<T> server, Function<T, String> mapper) {
-		List<Swap> swaps = fix(name, type, client.stream().map(mapper).collect(Collectors.toList()), server.stream().map(mapper).collect(Collectors.toList()));
+	/**
+	 * StitchUtil#mergePreserveOrder can deadlock if the members common to both lists are in a different relative order,
+	 * so this finds the longest run of common client members already in the server's order (via patience sorting) and
+	 * moves every other common member to directly after the member it follows on the server. Members which are only on
+	 * the client stay where they are relative to those which don't move.
+	 *
+	 * @return The new order of the client's members as indexes into the current order, or {@code null} if nothing needs to move
+	 */
+	private static int[] fix(List<String> client, List<String> server) {
+		Map<String, Integer> serverIndex = new HashMap<>(server.size() * 2);
+		for (int i = 0; i < server.size(); i++) {
+			serverIndex.putIfAbsent(server.get(i), i);
+		}
 
-		for (Swap swap : swaps) {
-			Collections.swap(client, swap.a, swap.b);
+		int[] keys = new int[client.size()];
+		int commonCount = 0;
+		for (int i = 0; i < keys.length; i++) {
+			Integer index = serverIndex.get(client.get(i));
+			keys[i] = index != null ? index : -1;
+			if (index != null) commonCount++;
 		}
 
-		if (!swaps.isEmpty()) System.out.println("Resolved " + type + " issues in " + name);
-	}
+		int[] common = new int[commonCount]; //Client indexes of the common members in client order
+		for (int i = 0, j = 0; i < keys.length; i++) {
+			if (keys[i] >= 0) common[j++] = i;
+		}
+
+		//Patience sort the common members by server index to find the longest increasing subsequence
+		int[] tails = new int[commonCount];
+		int[] previous = new int[commonCount];
+		int length = 0;
+		for (int j = 0; j < commonCount; j++) {
+			int key = keys[common[j]];
+			int low = 0, high = length;
+
+			while (low < high) {
+				int mid = (low + high) >>> 1;
+
+				if (keys[common[tails[mid]]] < key) {
+					low = mid + 1;
+				} else {
+					high = mid;
+				}
+			}
+
+			previous[j] = low > 0 ? tails[low - 1] : -1;
+			tails[low] = j;
+			if (low == length) length++;
+		}
+
+		if (length == commonCount) return null; //Already in the right order
+
+		boolean[] anchored = new boolean[keys.length];
+		for (int j = length > 0 ? tails[length - 1] : -1; j >= 0; j = previous[j]) {
+			anchored[common[j]] = true;
+		}
+
+		//Everything not anchored moves to follow whichever anchored member comes before it on the server
+		Integer[] serverOrder = new Integer[commonCount];
+		for (int j = 0; j < commonCount; j++) {
+			serverOrder[j] = common[j];
+		}
+		Arrays.sort(serverOrder, Comparator.<Integer>comparingInt(i -> keys[i]).thenComparingInt(i -> i));
+
+		List<Integer> leading = new ArrayList<>();
+		Map<Integer, List<Integer>> following = new HashMap<>();
+		List<Integer> group = leading;
+		for (int i : serverOrder) {
+			if (anchored[i]) {
+				following.put(i, group = new ArrayList<>());
+			} else {
+				group.add(i);
+			}
+		}
+
+		int[] order = new int[keys.length];
+		int next = 0;
+		for (int i = 0; i < keys.length; i++) {
+			if (keys[i] < 0) {
+				order[next++] = i;
+			} else if (anchored[i]) {
+				for (int moved : leading) {
+					order[next++] = moved;
+				}
+				leading.clear();
 
-	private static List<Swap> fix(String name, String type, List<String> client, List<String> server) {
-		List<Swap> swaps = new ArrayList<>();
-
-		boolean attemptedFix = false;
-		for (int c = 0, s = 0; c < client.size() && s < server.size();) {//StitchUtil#mergePreserveOrder can deadlock under certain orderings, let's try not let it
-			boolean madeShift = false;
-
-			while (c < client.size() && s < server.size() && client.get(c).equals(server.get(s))) {
-                c++;
-                s++;
-                madeShift = true;
-            }
-
-            while (c < client.size() && !server.contains(client.get(c))) {
-                c++;
-                madeShift = true;
-            }
-
-            while (s < server.size() && !client.contains(server.get(s))) {
-                s++;
-                madeShift = true;
-            }
-
-            if (!madeShift) {//Will deadlock in Stitch
-            	if (attemptedFix) {
-            		throw new IllegalStateException("Unable to fix " + type + " inconsistencies in " + name);
-            	} else {
-            		System.out.println(Character.toUpperCase(type.charAt(0)) + type.substring(1) + " deadlock found in " + name + " at " + c + ", " + s);
-            		Collections.swap(client, c, c + 1);
-            		swaps.add(new Swap(c, c + 1));
-            		attemptedFix = true;
-            	}
-            } else if (attemptedFix) {//Fixed the problem
-            	attemptedFix = false;
-            }
+				order[next++] = i;
+				for (int moved : following.get(i)) {
+					order[next++] = moved;
+				}
+			}
 		}
 
-		return swaps;
+		assert next == order.length;
+		return order;
 	}
 
 	private static byte[] write(ClassNode node) {
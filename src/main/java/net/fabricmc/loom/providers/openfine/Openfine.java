@@ -7,42 +7,55 @@
  */
 package net.fabricmc.loom.providers.openfine;
 
+import java.io.BufferedOutputStream;
 import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.InputStream;
+import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.net.URLClassLoader;
-import java.nio.file.FileSystem;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.StandardOpenOption;
-import java.nio.file.attribute.BasicFileAttributeView;
-import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Set;
-import java.util.jar.JarEntry;
-import java.util.jar.JarFile;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
 
 import org.apache.commons.io.FilenameUtils;
+import org.apache.commons.io.IOUtils;
 
 import org.gradle.api.InvalidUserDataException;
 import org.gradle.api.logging.Logger;
 
-import com.google.common.collect.ImmutableSet;
-import com.google.common.collect.Iterators;
-import com.google.common.collect.Sets;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+
+import net.fabricmc.loom.util.FileHashes;
 
 import net.fabricmc.mappings.EntryTriple;
 import net.fabricmc.mappings.FieldEntry;
 import net.fabricmc.mappings.MappingsProvider;
-import net.fabricmc.stitch.util.StitchUtil;
-import net.fabricmc.stitch.util.StitchUtil.FileSystemDelegate;
 
 public class Openfine {
 	public static final String VERSION = "cc6da75";
@@ -55,109 +68,260 @@ public class Openfine {
 			throw new InvalidUserDataException("Incompatible OptiFine version, requires " + optifine.minecraftVersion + " rather than " + mcVersion);
 		}
 
+		//Outputs are stored by what went into making them, so changing any of the inputs (even if the name stays the same) is noticed
 		File optiCache = new File(client.getParentFile(), "optifine");
-		optiCache.mkdirs();
+		FileHashes hashes = new FileHashes(new File(optiCache, "inputs.hashes").toPath());
+		HashCode clientHash = hashes.sha1(client);
+		HashCode serverHash = hashes.sha1(server);
+		HashCode optifineHash = hashes.sha1(optifineJar);
+		hashes.save();
+
+		//Outputs used to be stored flat, by name alone, which nothing will look for any more
+		Files.deleteIfExists(new File(optiCache, FilenameUtils.removeExtension(client.getName()) + "-optifined.jar").toPath());
+		if (optifine.isInstaller) Files.deleteIfExists(new File(optiCache, FilenameUtils.removeExtension(optifineJar.getName()) + "-extract.jar").toPath());
+
+		File optifineIn = optifineJar;
+		HashCode mergeKey = key("merge " + VERSION, clientHash, serverHash, optifineHash);
+		return publish(optiCache, mergeKey, FilenameUtils.removeExtension(client.getName()) + "-optifined.jar", to -> {
+			JarContents mc = JarContents.read(client, name -> true);
+			JarContents of;
+
+			if (optifine.isInstaller) {
+				of = extract(logger, mc, client, optifineIn);
+
+				if (logger.isDebugEnabled()) {//Only worth writing out the extracted jar to see what the installer produced
+					publish(optiCache, key("extract", clientHash, optifineHash), FilenameUtils.removeExtension(optifineIn.getName()) + "-extract.jar", of::write);
+				}
+			} else {
+				of = JarContents.read(optifineIn, name -> true);
+			}
+
+			merge(logger, mc, of, server, to);
+		});
+	}
+
+	private static HashCode key(String type, HashCode... inputs) {
+		Hasher hasher = Hashing.sha1().newHasher().putString(type, StandardCharsets.UTF_8);
 
-		if (optifine.isInstaller) {
-			File installer = optifineJar;
-			optifineJar = new File(optiCache, FilenameUtils.removeExtension(optifineJar.getName()) + "-extract.jar");
-			if (!optifineJar.exists()) extract(logger, client, installer, optifineJar);
+		for (HashCode input : inputs) {
+			hasher.putBytes(input.asBytes());
 		}
 
-		File merged = new File(optiCache, FilenameUtils.removeExtension(client.getName()) + "-optifined.jar");
-		if (!merged.exists()) merge(logger, client, optifineJar, server, merged);
+		return hasher.hash();
+	}
 
-		return merged;
+	private interface Producer {
+		void produce(File to) throws IOException;
 	}
 
-	private static void extract(Logger logger, File minecraft, File installer, File to) throws IOException {
-		logger.info("Extracting OptiFine into " + to);
+	private static File publish(File store, HashCode key, String name, Producer producer) throws IOException {
+		File dir = new File(store, key.toString());
+		File output = new File(dir, name);
+		if (output.exists()) return output;
+
+		//Produce the output off to the side so nothing else ever sees it half written
+		dir.mkdirs();
+		Path temp = Files.createTempFile(dir.toPath(), name, ".tmp");
+
 		try {
-			URLClassLoader classLoader = new URLClassLoader(new URL[] {installer.toURI().toURL()}, Openfine.class.getClassLoader());
+			producer.produce(temp.toFile());
 
-			Class<?> clazz = classLoader.loadClass("optifine.Patcher");
-			Method method = clazz.getDeclaredMethod("process", File.class, File.class, File.class);
-			method.invoke(null, minecraft, installer, to);
+			try {
+				Files.move(temp, output.toPath(), StandardCopyOption.ATOMIC_MOVE);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(temp, output.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			}
+		} finally {
+			Files.deleteIfExists(temp);
+		}
+
+		return output;
+	}
+
+	private static JarContents extract(Logger logger, JarContents minecraft, File client, File installer) throws IOException {
+		logger.info("Extracting OptiFine from " + installer);
+
+		try (URLClassLoader classLoader = new URLClassLoader(new URL[] {installer.toURI().toURL()}, Openfine.class.getClassLoader())) {
+			Class<?> patcher = classLoader.loadClass("optifine.Patcher");
+			Method getConfigurationMap, getConfigurationPatterns, applyPatch;
+			Class<?> resourceProvider;
+
+			try {
+				getConfigurationMap = patcher.getMethod("getConfigurationMap", ZipFile.class);
+				getConfigurationPatterns = patcher.getMethod("getConfigurationPatterns", Map.class);
+				resourceProvider = classLoader.loadClass("optifine.IResourceProvider");
+				applyPatch = patcher.getMethod("applyPatch", String.class, byte[].class, Pattern[].class, Map.class, resourceProvider);
+			} catch (ReflectiveOperationException e) {
+				logger.info("Unable to patch OptiFine in memory, falling back to the installer's own extraction");
+				File temp = File.createTempFile("optifine-extract", ".jar");
+
+				try {
+					patcher.getMethod("process", File.class, File.class, File.class).invoke(null, client, installer, temp);
+					return JarContents.read(temp, name -> true);
+				} finally {
+					temp.delete();
+				}
+			}
+
+			//Serve the vanilla classes the patches apply to from memory rather than having the installer read the client jar again
+			Object resources = Proxy.newProxyInstance(classLoader, new Class<?>[] {resourceProvider}, (proxy, method, args) -> {
+				if (method.getDeclaringClass() == Object.class) return method.invoke(minecraft, args);
+
+				String path = (String) args[0];
+				byte[] data = minecraft.data.get(path.startsWith("/") ? path.substring(1) : path);
+				return data != null ? new ByteArrayInputStream(data) : null;
+			});
+
+			//Mirrors the entry handling of Patcher#process, so the result is the same as the jar the installer would have written
+			JarContents contents = new JarContents();
+			long time = System.currentTimeMillis(); //The installer writes fresh entries, so they're stamped with when they were extracted
+			try (ZipFile zip = new ZipFile(installer)) {
+				Map<?, ?> config = (Map<?, ?>) getConfigurationMap.invoke(null, zip);
+				Pattern[] patterns = (Pattern[]) getConfigurationPatterns.invoke(null, config);
+
+				for (Enumeration<? extends ZipEntry> it = zip.entries(); it.hasMoreElements();) {
+					ZipEntry entry = it.nextElement();
+					String name = entry.getName();
+
+					byte[] bytes;
+					try (InputStream in = zip.getInputStream(entry)) {
+						bytes = IOUtils.toByteArray(in);
+					}
+
+					if (name.startsWith("patch/") && name.endsWith(".xdelta")) {
+						name = name.substring(6, name.length() - 7);
+						byte[] patched = (byte[]) applyPatch.invoke(null, name, bytes, patterns, config, resources);
+
+						ZipEntry md5 = zip.getEntry("patch/" + name + ".md5");
+						if (md5 != null) {
+							String expected;
+							try (InputStream in = zip.getInputStream(md5)) {
+								expected = IOUtils.toString(in, StandardCharsets.US_ASCII);
+							}
+
+							@SuppressWarnings("deprecation")
+							String actual = Hashing.md5().hashBytes(patched).toString();
+							if (!actual.equals(expected)) {
+								throw new IOException("MD5 not matching, name: " + name + ", saved: " + expected + ", patched: " + actual);
+							}
+						}
+
+						ZipEntry out = new ZipEntry(name);
+						out.setTime(time);
+						contents.add(out, patched);
+					} else if (!name.startsWith("patch/") || !name.endsWith(".md5")) {//Only the patches' own hashes are left out
+						ZipEntry out = new ZipEntry(name);
+						out.setTime(time);
+						contents.add(out, out.isDirectory() ? null : bytes);
+					}
+				}
+			}
 
-			classLoader.close();
+			return contents;
 		} catch (MalformedURLException e) {
 			throw new RuntimeException("Unable to use OptiFine jar at " + installer.getAbsolutePath(), e);
+		} catch (InvocationTargetException e) {
+			throw new RuntimeException("Error running OptiFine installer", e.getCause());
 		} catch (ReflectiveOperationException e) {
 			throw new RuntimeException("Error running OptiFine installer", e);
 		}
 	}
 
-	private static void merge(Logger logger, File client, File optifine, File server, File to) throws IOException {
-		logger.info("Merging OptiFine into " + to);
+	private static class JarContents {
+		public final Map<String, ZipEntry> entries = new LinkedHashMap<>();
+		public final Map<String, byte[]> data = new HashMap<>();
 
-		Set<String> mcEntries, optifineEntries, intersection;
-		try (JarFile mcJar = new JarFile(client); JarFile optifineJar = new JarFile(optifine)) {
-			//Comparison on ZipEntries is poorly defined so we'll use the entry names for equality
-			mcEntries = ImmutableSet.copyOf(Iterators.transform(Iterators.forEnumeration(mcJar.entries()), JarEntry::getName));
-			optifineEntries = ImmutableSet.copyOf(Iterators.transform(Iterators.forEnumeration(optifineJar.entries()), JarEntry::getName));
+		public static JarContents read(File jar, Predicate<String> filter) throws IOException {
+			JarContents contents = new JarContents();
 
-			if (mcEntries.size() > optifineEntries.size()) {
-				intersection = Sets.intersection(optifineEntries, mcEntries);
-			} else {
-				intersection = Sets.intersection(mcEntries, optifineEntries);
+			try (ZipFile zip = new ZipFile(jar)) {
+				for (Enumeration<? extends ZipEntry> it = zip.entries(); it.hasMoreElements();) {
+					ZipEntry entry = it.nextElement();
+					if (!filter.test(entry.getName())) continue;
+
+					contents.entries.put(entry.getName(), entry);
+					if (!entry.isDirectory()) {
+						try (InputStream in = zip.getInputStream(entry)) {
+							contents.data.put(entry.getName(), IOUtils.toByteArray(in));
+						}
+					}
+				}
 			}
+
+			return contents;
 		}
 
-		try (FileSystemDelegate mcFS = StitchUtil.getJarFileSystem(client, false);
-				FileSystemDelegate ofFS = StitchUtil.getJarFileSystem(optifine, false);
-				FileSystemDelegate serverFS = StitchUtil.getJarFileSystem(server, false);
-				FileSystemDelegate outputFS = StitchUtil.getJarFileSystem(to, true)) {
-			for (String entry : Sets.difference(mcEntries, optifineEntries)) {
-				copy(mcFS.get(), outputFS.get(), entry);
+		public void add(ZipEntry entry, byte[] contents) {
+			entries.put(entry.getName(), entry);
+			if (contents != null) data.put(entry.getName(), contents);
+		}
+
+		public void write(File to) throws IOException {
+			try (ZipOutputStream out = new ZipOutputStream(new BufferedOutputStream(new FileOutputStream(to)))) {
+				for (ZipEntry entry : entries.values()) {
+					Openfine.write(out, entry, data.get(entry.getName()));
+				}
 			}
+		}
+	}
 
-			for (String entry : Sets.difference(optifineEntries, mcEntries)) {
-				copy(ofFS.get(), outputFS.get(), entry);
+	private static void merge(Logger logger, JarContents mc, JarContents of, File server, File to) throws IOException {
+		logger.info("Merging OptiFine into " + to);
+
+		JarContents stitchFix = JarContents.read(server, name -> name.endsWith(".class") && mc.entries.containsKey(name) && of.entries.containsKey(name));
+
+		ForkJoinPool pool = new ForkJoinPool();
+		try {
+			Map<String, ForkJoinTask<byte[]>> reconstructions = new HashMap<>();
+
+			for (String entry : mc.entries.keySet()) {
+				if (entry.endsWith(".class") && of.entries.containsKey(entry)) {
+					byte[] raw = mc.data.get(entry);
+					byte[] patched = of.data.get(entry);
+					byte[] fix = stitchFix.data.get(entry);
+
+					reconstructions.put(entry, pool.submit(() -> ClassReconstructor.reconstruct(raw, patched, fix)));
+				}
 			}
 
-			for (String entry : intersection) {
-				if (entry.endsWith(".class")) {
-					Path pathRawIn = mcFS.get().getPath(entry);
-					Path pathPatchedIn = ofFS.get().getPath(entry);
-
-					Path pathOut = outputFS.get().getPath(entry);
-			        if (pathOut.getParent() != null) {
-			            Files.createDirectories(pathOut.getParent());
-			        }
-
-			        Path pathStichFix = serverFS.get().getPath(entry);
-			        byte[] stitchFix = Files.isReadable(pathStichFix) ? Files.readAllBytes(pathStichFix) : null;
-
-			        logger.info("Reconstructing " + entry);
-			        byte[] data = ClassReconstructor.reconstruct(Files.readAllBytes(pathRawIn), Files.readAllBytes(pathPatchedIn), stitchFix);
-
-			        //BasicFileAttributes touchTime = Files.readAttributes(pathIn, BasicFileAttributes.class);
-			        Files.write(pathOut, data, StandardOpenOption.CREATE_NEW);
-			        //Files.getFileAttributeView(pathIn, BasicFileAttributeView.class).setTimes(touchTime.lastModifiedTime(), touchTime.lastAccessTime(), touchTime.creationTime());
-				} else if (entry.startsWith("META-INF/")) {
-					copy(mcFS.get(), outputFS.get(), entry);
-				} else {
-					copy(ofFS.get(), outputFS.get(), entry);
+			//Results are collected in the Minecraft jar's order (then OptiFine's own additions) so the output is always the same
+			try (ZipOutputStream out = new ZipOutputStream(new BufferedOutputStream(new FileOutputStream(to)))) {
+				for (ZipEntry entry : mc.entries.values()) {
+					String name = entry.getName();
+					ForkJoinTask<byte[]> reconstruction = reconstructions.get(name);
+
+					if (reconstruction != null) {
+						logger.info("Reconstructing " + name);
+						write(out, entry, reconstruction.join());
+					} else if (!of.entries.containsKey(name) || name.startsWith("META-INF/")) {
+						write(out, entry, mc.data.get(name));
+					} else {
+						write(out, of.entries.get(name), of.data.get(name));
+					}
+				}
+
+				for (ZipEntry entry : of.entries.values()) {
+					if (!mc.entries.containsKey(entry.getName())) {
+						write(out, entry, of.data.get(entry.getName()));
+					}
 				}
 			}
-		} catch (IllegalStateException e) {
-			//If an ISE is thrown something has clearly gone wrong with the merging of the jars, thus we don't want to keep the corrupted output
+		} catch (IOException | RuntimeException e) {
+			//If anything is thrown something has clearly gone wrong with the merging of the jars, thus we don't want to keep the corrupted output
 			if (!to.delete()) to.deleteOnExit();
 			throw e;
+		} finally {
+			pool.shutdownNow();
 		}
 	}
 
-	private static void copy(FileSystem fsIn, FileSystem fsOut, String entry) throws IOException {
-		Path pathIn = fsIn.getPath(entry);
-
-		Path pathOut = fsOut.getPath(entry);
-        if (pathOut.getParent() != null) {
-            Files.createDirectories(pathOut.getParent());
-        }
+	private static void write(ZipOutputStream out, ZipEntry from, byte[] data) throws IOException {
+		ZipEntry entry = new ZipEntry(from.getName());
+		entry.setTime(from.getTime());
 
-        BasicFileAttributes touchTime = Files.readAttributes(pathIn, BasicFileAttributes.class);
-        Files.copy(pathIn, pathOut);
-        Files.getFileAttributeView(pathIn, BasicFileAttributeView.class).setTimes(touchTime.lastModifiedTime(), touchTime.lastAccessTime(), touchTime.creationTime());
+		out.putNextEntry(entry);
+		if (data != null) out.write(data);
+		out.closeEntry();
 	}
 
 	public static void applyBonusMappings(File to) throws IOException {
@@ -0,0 +1,71 @@
+/*
+ * This file is part of fabric-loom, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2016, 2017, 2018 FabricMC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.fabricmc.loom.task;
+
+import java.io.IOException;
+
+import org.gradle.api.tasks.Internal;
+import org.gradle.api.tasks.TaskAction;
+
+import net.fabricmc.loom.task.procyon.ProcyonEngine;
+import net.fabricmc.loom.util.progress.ProgressLogger;
+
+/**
+ * Decompiles the input using any given {@link DecompilerEngine}, {@link ProcyonEngine} by default.
+ */
+public class DecompileTask extends AbstractDecompileTask {
+	private DecompilerEngine engine = new ProcyonEngine();
+	private int numThreads = Runtime.getRuntime().availableProcessors();
+
+	@TaskAction
+	public void doTask() throws IOException {
+		ProgressLogger progressLogger = ProgressLogger.getProgressFactory(getProject(), getClass().getName());
+		progressLogger.start("Decompiling " + getInput().getName(), "decompile");
+
+		try {
+			getEngine().decompile(getInput(), getLibraries().getFiles(), getOutput(), getLineMapFile(), getNumThreads(), progressLogger);
+		} finally {
+			progressLogger.completed();
+		}
+	}
+
+	@Internal
+	public DecompilerEngine getEngine() {
+		return engine;
+	}
+
+	@Internal
+	public int getNumThreads() {
+		return numThreads;
+	}
+
+	public void setEngine(DecompilerEngine engine) {
+		this.engine = engine;
+	}
+
+	public void setNumThreads(int numThreads) {
+		this.numThreads = numThreads;
+	}
+}
@@ -0,0 +1,51 @@
+/*
+ * This file is part of fabric-loom, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2016, 2017, 2018 FabricMC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.fabricmc.loom.task;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collection;
+
+import net.fabricmc.loom.util.LineNumberRemapper;
+import net.fabricmc.loom.util.progress.ProgressLogger;
+
+/**
+ * A decompiler which can be plugged into a {@link DecompileTask}.
+ */
+public interface DecompilerEngine {
+	/**
+	 * Decompiles every class in the input jar, writing the resulting sources into the output jar.
+	 *
+	 * @param input The jar to decompile
+	 * @param libraries The libraries the input depends on
+	 * @param output The jar to write the decompiled sources to
+	 * @param lineMap The file to write the line mappings to in the format {@link LineNumberRemapper} reads, or {@code null} to not write any
+	 * @param threads The number of threads which can be used to decompile
+	 * @param logger The progress logger to report what is being decompiled to
+	 *
+	 * @throws IOException If there is a problem reading the input and libraries or writing the output and line mappings
+	 */
+	void decompile(File input, Collection<File> libraries, File output, File lineMap, int threads, ProgressLogger logger) throws IOException;
+}
@@ -39,11 +39,15 @@ import org.gradle.process.JavaExecSpec;
  * <p>Created by covers1624 on 11/02/19.
  */
 public interface ForkingJavaExecTask extends Task {
-	default ExecResult javaexec(Action<? super JavaExecSpec> action) {
+	default FileCollection forkingClasspath() {
 		ConfigurationContainer configurations = getProject().getBuildscript().getConfigurations();
 		DependencyHandler handler = getProject().getDependencies();
-		FileCollection classpath = configurations.getByName("classpath")//
+		return configurations.getByName("classpath")//
 				.plus(configurations.detachedConfiguration(handler.localGroovy()));
+	}
+
+	default ExecResult javaexec(Action<? super JavaExecSpec> action) {
+		FileCollection classpath = forkingClasspath();
 
 		return getProject().javaexec(spec -> {
 			spec.classpath(classpath);
@@ -0,0 +1,88 @@
+/*
+ * This file is part of fabric-loom, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2016, 2017, 2018 FabricMC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.fabricmc.loom.task.fernflower;
+
+import java.util.jar.Manifest;
+
+import org.jetbrains.java.decompiler.main.extern.IResultSaver;
+
+/**
+ * Funnels the archives of several chunked decompiles into a single output archive.
+ *
+ * <p>The real archive is opened with {@link #open(Manifest)} before the first chunk and only
+ * closed by {@link #close()} after the last, whilst each chunk's own archive calls are ignored.
+ */
+public class ChunkedResultSaver implements IResultSaver {
+	private final IResultSaver saver;
+	private final String path;
+	private final String archiveName;
+
+	public ChunkedResultSaver(IResultSaver saver, String path, String archiveName) {
+		this.saver = saver;
+		this.path = path;
+		this.archiveName = archiveName;
+	}
+
+	public void open(Manifest manifest) {
+		saver.createArchive(path, archiveName, manifest);
+	}
+
+	@Override
+	public void createArchive(String path, String archiveName, Manifest manifest) {
+	}
+
+	@Override
+	public void saveClassEntry(String path, String archiveName, String qualifiedName, String entryName, String content) {
+		saver.saveClassEntry(this.path, this.archiveName, qualifiedName, entryName, content);
+	}
+
+	@Override
+	public void closeArchive(String path, String archiveName) {
+	}
+
+	public void close() {
+		saver.closeArchive(path, archiveName);
+	}
+
+	@Override
+	public void saveFolder(String path) {
+	}
+
+	@Override
+	public void copyFile(String source, String path, String entryName) {
+	}
+
+	@Override
+	public void saveClassFile(String path, String qualifiedName, String entryName, String content, int[] mapping) {
+	}
+
+	@Override
+	public void saveDirEntry(String path, String archiveName, String entryName) {
+	}
+
+	@Override
+	public void copyEntry(String source, String path, String archiveName, String entry) {
+	}
+}
@@ -0,0 +1,108 @@
+/*
+ * This file is part of fabric-loom, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2016, 2017, 2018 FabricMC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.fabricmc.loom.task.fernflower;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+import org.apache.commons.io.IOUtils;
+
+/**
+ * Splits a jar into groups of classes which can be decompiled independently of one another.
+ *
+ * <p>Classes are grouped by package order, with any inner classes always kept in the same
+ * chunk as the outer class they belong to so Fernflower can still nest them correctly.
+ */
+public class DecompileChunks {
+	public static List<List<String>> partition(File jar, int chunkSize) throws IOException {
+		if (chunkSize < 1) throw new IllegalArgumentException("Invalid chunk size: " + chunkSize);
+		Map<String, List<String>> outerClasses = new TreeMap<>();
+
+		try (ZipFile archive = new ZipFile(jar)) {
+			for (Enumeration<? extends ZipEntry> it = archive.entries(); it.hasMoreElements();) {
+				ZipEntry entry = it.nextElement();
+				String name = entry.getName();
+
+				if (entry.isDirectory() || !name.endsWith(".class")) {
+					continue;
+				}
+
+				int packageEnd = name.lastIndexOf('/');
+				int innerSplit = name.indexOf('$', packageEnd + 1);
+				String outer = innerSplit > 0 ? name.substring(0, innerSplit) : name.substring(0, name.length() - 6);
+
+				outerClasses.computeIfAbsent(outer, k -> new ArrayList<>()).add(name);
+			}
+		}
+
+		List<List<String>> chunks = new ArrayList<>();
+		List<String> chunk = new ArrayList<>();
+
+		for (List<String> classes : outerClasses.values()) {
+			if (!chunk.isEmpty() && chunk.size() + classes.size() > chunkSize) {
+				chunks.add(chunk);
+				chunk = new ArrayList<>();
+			}
+
+			chunk.addAll(classes);
+		}
+
+		if (!chunk.isEmpty()) {
+			chunks.add(chunk);
+		}
+
+		return chunks;
+	}
+
+	public static void write(File jar, List<String> classes, File destination) throws IOException {
+		try (ZipFile archive = new ZipFile(jar); ZipOutputStream out = new ZipOutputStream(new FileOutputStream(destination))) {
+			for (String name : classes) {
+				ZipEntry entry = archive.getEntry(name);
+
+				if (entry == null) {
+					throw new IOException("Entry not found: " + name);
+				}
+
+				out.putNextEntry(new ZipEntry(name));
+
+				try (InputStream in = archive.getInputStream(entry)) {
+					IOUtils.copy(in, out);
+				}
+
+				out.closeEntry();
+			}
+		}
+	}
+}
@@ -0,0 +1,144 @@
+/*
+ * This file is part of fabric-loom, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2016, 2017, 2018 FabricMC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.fabricmc.loom.task.fernflower;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.gradle.api.logging.Logger;
+import org.gradle.internal.logging.progress.ProgressLogger;
+import org.gradle.internal.logging.progress.ProgressLoggerFactory;
+
+/**
+ * Drives a {@link ProgressLogger} for each active decompiler thread from the events of a {@link ProgressProtocol} stream.
+ */
+public class DecompileProgressListener implements ProgressProtocol.Listener {
+	private static class Worker {
+		public final ProgressLogger logger;
+		public String currentClass;
+
+		Worker(ProgressLogger logger) {
+			this.logger = logger;
+		}
+	}
+
+	private final Class<?> category;
+	private final ProgressLoggerFactory factory;
+	private final ProgressLogger progressGroup;
+	private final Logger logger;
+	private final Map<Integer, Worker> inUseLoggers = new HashMap<>();
+	private final Deque<ProgressLogger> freeLoggers = new ArrayDeque<>();
+
+	public DecompileProgressListener(Class<?> category, ProgressLoggerFactory factory, ProgressLogger progressGroup, Logger logger) {
+		this.category = category;
+		this.factory = factory;
+		this.progressGroup = progressGroup;
+		this.logger = logger;
+	}
+
+	@Override
+	public void onEvent(byte type, int id, String detail) {
+		switch (type) {
+		case ProgressProtocol.WARN:
+			logger.warn(detail);
+			return;
+
+		case ProgressProtocol.ERROR:
+			logger.error(detail);
+			return;
+
+		case ProgressProtocol.IDLE: {
+			Worker worker = inUseLoggers.remove(id);
+
+			if (worker != null) {
+				worker.logger.progress("Idle..");
+				freeLoggers.push(worker.logger);
+			}
+
+			return;
+		}
+		}
+
+		Worker worker = inUseLoggers.get(id);
+		if (worker == null) {
+			ProgressLogger progress;
+
+			if (!freeLoggers.isEmpty()) {
+				progress = freeLoggers.pop();
+			} else {
+				progress = factory.newOperation(category, progressGroup);
+				progress.setDescription("decompile worker");
+				progress.started();
+			}
+
+			inUseLoggers.put(id, worker = new Worker(progress));
+		}
+
+		switch (type) {
+		case ProgressProtocol.READING:
+			worker.currentClass = detail;
+			worker.logger.progress("Reading " + detail);
+			break;
+
+		case ProgressProtocol.DECOMPILING:
+			worker.currentClass = detail;
+			worker.logger.progress("Decompiling " + detail);
+			break;
+
+		case ProgressProtocol.METHOD: {
+			int split = detail.indexOf(' ');
+			worker.logger.progress("Decompiling " + worker.currentClass + '.' + (split > 0 ? detail.substring(0, split) : detail));
+			break;
+		}
+
+		case ProgressProtocol.WRITING:
+			worker.logger.progress("Writing " + detail);
+			break;
+
+		case ProgressProtocol.STATUS:
+			worker.logger.progress(detail);
+			break;
+
+		default:
+			logger.error("Unexpected decompiler event " + type + ": " + detail);
+		}
+	}
+
+	@Override
+	public void onText(String line) {
+		if (line.startsWith("Listening for transport")) {
+			System.out.println(line);
+		} else {
+			logger.error("Unprefixed line: " + line);
+		}
+	}
+
+	public void completed() {
+		inUseLoggers.values().forEach(worker -> worker.logger.completed());
+		freeLoggers.forEach(ProgressLogger::completed);
+	}
+}
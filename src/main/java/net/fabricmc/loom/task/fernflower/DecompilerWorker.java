@@ -0,0 +1,64 @@
+/*
+ * This file is part of fabric-loom, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2016, 2017, 2018 FabricMC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.fabricmc.loom.task.fernflower;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Entry point for a persistent decompiler JVM, kept alive by {@link DecompilerWorkerPool}.
+ *
+ * <p>Each line read from stdin is a single job, with the arguments {@link ForkedFFExecutor}
+ * would otherwise be given split by {@link #SEPARATOR}. Progress is written to stdout exactly
+ * as the forked executor would, with the job finishing with a {@link ProgressProtocol#DONE} event
+ * whose ID is {@code 0} for success or {@code 1} for failure. The worker exits once stdin is closed.
+ */
+public class DecompilerWorker {
+	public static final char SEPARATOR = '\0';
+
+	public static void main(String[] args) throws IOException {
+		BufferedReader in = new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8));
+
+		String job;
+		while ((job = in.readLine()) != null) {
+			if (job.isEmpty()) continue;
+			boolean success;
+
+			try {
+				ForkedFFExecutor.main(job.split(String.valueOf(SEPARATOR)), System.out, System.err);
+				success = true;
+			} catch (Throwable t) {
+				t.printStackTrace(System.err);
+				success = false;
+			}
+
+			System.err.flush();
+			ProgressProtocol.write(System.out, ProgressProtocol.DONE, success ? 0 : 1, "");
+			System.out.flush();
+		}
+	}
+}
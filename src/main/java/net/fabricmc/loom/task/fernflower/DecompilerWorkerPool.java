@@ -0,0 +1,247 @@
+/*
+ * This file is part of fabric-loom, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2016, 2017, 2018 FabricMC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.fabricmc.loom.task.fernflower;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps {@link DecompilerWorker} JVMs alive between decompiles for as long as the Gradle daemon keeps Loom loaded
+ * (which it does between builds whilst the buildscript classpath stays the same), so that later decompiles, including
+ * those of later builds, avoid starting and warming up a fresh JVM. Workers
+ * also keep the library classes they last parsed, so decompiling against the same libraries again skips parsing them.
+ *
+ * <p>Workers are only reused for decompiles with the same classpath and JVM arguments. Any left idle for longer than
+ * {@link #IDLE_TIMEOUT} are stopped, as are all remaining workers once the daemon exits. A worker will also exit by
+ * itself if the daemon dies without stopping it, as its stdin will be closed.
+ */
+public final class DecompilerWorkerPool {
+	private static class Worker {
+		public final String key;
+		long lastUsed;
+		private final Process process;
+		private final Writer in;
+		private final InputStream out;
+
+		Worker(String key, List<String> command) throws IOException {
+			this.key = key;
+			process = new ProcessBuilder(command).start();
+			in = new BufferedWriter(new OutputStreamWriter(process.getOutputStream(), StandardCharsets.UTF_8));
+			out = process.getInputStream();
+
+			Thread errorPump = new Thread(() -> {
+				try (InputStream err = process.getErrorStream()) {
+					byte[] buffer = new byte[4096];
+
+					for (int read; (read = err.read(buffer)) >= 0;) {
+						System.err.write(buffer, 0, read);
+					}
+				} catch (IOException e) {
+					//Worker has gone away
+				}
+			}, "Decompiler worker error pump");
+			errorPump.setDaemon(true);
+			errorPump.start();
+		}
+
+		boolean run(List<String> args, ProgressProtocol.Listener listener) throws IOException {
+			in.write(String.join(String.valueOf(DecompilerWorker.SEPARATOR), args));
+			in.write('\n');
+			in.flush();
+
+			int[] exitCode = {-1};
+			ProgressProtocol.Decoder decoder = new ProgressProtocol.Decoder(new ProgressProtocol.Listener() {
+				@Override
+				public void onEvent(byte type, int id, String detail) {
+					if (type == ProgressProtocol.DONE) {
+						exitCode[0] = id;
+					} else {
+						listener.onEvent(type, id, detail);
+					}
+				}
+
+				@Override
+				public void onText(String line) {
+					listener.onText(line);
+				}
+			});
+
+			byte[] buffer = new byte[8192];
+			while (exitCode[0] < 0) {
+				int read = out.read(buffer);
+				if (read < 0) throw new IOException("Decompiler worker exited unexpectedly");
+
+				decoder.write(buffer, 0, read);
+			}
+
+			return exitCode[0] == 0;
+		}
+
+		void close() {
+			try {
+				in.close();
+
+				if (process.waitFor(10, TimeUnit.SECONDS)) {
+					return;
+				}
+			} catch (IOException | InterruptedException e) {
+				//Don't care, we're killing it anyway
+			}
+
+			process.destroyForcibly();
+		}
+	}
+
+	/** How long a worker can be left unused before it is stopped, in milliseconds */
+	public static final long IDLE_TIMEOUT = TimeUnit.MINUTES.toMillis(10);
+	private static final DecompilerWorkerPool INSTANCE = new DecompilerWorkerPool();
+
+	private final Map<String, Deque<Worker>> idleWorkers = new HashMap<>();
+	private final List<Worker> workers = new ArrayList<>();
+	private final ScheduledExecutorService reaper = Executors.newSingleThreadScheduledExecutor(task -> {
+		Thread thread = new Thread(task, "Decompiler worker reaper");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	private DecompilerWorkerPool() {
+		Runtime.getRuntime().addShutdownHook(new Thread(this::close, "Decompiler worker shutdown"));
+	}
+
+	public static void decompile(Iterable<File> classpath, List<String> jvmArgs, List<String> args, ProgressProtocol.Listener listener) {
+		INSTANCE.run(classpath, jvmArgs, args, listener);
+	}
+
+	private void run(Iterable<File> classpath, List<String> jvmArgs, List<String> args, ProgressProtocol.Listener listener) {
+		Worker worker = acquire(classpath, jvmArgs);
+		boolean success = false;
+
+		try {
+			success = worker.run(args, listener);
+		} catch (IOException e) {
+			throw new RuntimeException("Error communicating with decompiler worker", e);
+		} finally {
+			if (success) {
+				release(worker);
+			} else {
+				discard(worker);
+			}
+		}
+
+		if (!success) {
+			throw new RuntimeException("Decompiler worker failed, see the error output for details");
+		}
+	}
+
+	private synchronized Worker acquire(Iterable<File> classpath, List<String> jvmArgs) {
+		List<String> paths = new ArrayList<>();
+		for (File file : classpath) {
+			paths.add(file.getAbsolutePath());
+		}
+		String path = String.join(File.pathSeparator, paths);
+		String key = String.join(" ", jvmArgs) + File.pathSeparatorChar + path;
+
+		Deque<Worker> idle = idleWorkers.get(key);
+		if (idle != null && !idle.isEmpty()) return idle.pop();
+
+		List<String> command = new ArrayList<>();
+		command.add(new File(System.getProperty("java.home"), "bin" + File.separatorChar + "java").getAbsolutePath());
+		command.addAll(jvmArgs);
+		command.add("-cp");
+		command.add(path);
+		command.add(DecompilerWorker.class.getName());
+
+		try {
+			Worker worker = new Worker(key, command);
+			workers.add(worker);
+			return worker;
+		} catch (IOException e) {
+			throw new RuntimeException("Unable to start decompiler worker", e);
+		}
+	}
+
+	private synchronized void release(Worker worker) {
+		worker.lastUsed = System.currentTimeMillis();
+		idleWorkers.computeIfAbsent(worker.key, k -> new ArrayDeque<>()).push(worker);
+		reaper.schedule(this::reap, IDLE_TIMEOUT, TimeUnit.MILLISECONDS);
+	}
+
+	private synchronized void discard(Worker worker) {
+		workers.remove(worker);
+		worker.close();
+	}
+
+	/** Stops any workers which have been idle for at least {@link #IDLE_TIMEOUT} */
+	private void reap() {
+		List<Worker> expired = new ArrayList<>();
+		long cutoff = System.currentTimeMillis() - IDLE_TIMEOUT;
+
+		synchronized (this) {
+			for (Iterator<Deque<Worker>> it = idleWorkers.values().iterator(); it.hasNext();) {
+				Deque<Worker> idle = it.next();
+
+				//Most recently used workers are at the head, so the expired ones are all at the tail
+				while (!idle.isEmpty() && idle.peekLast().lastUsed <= cutoff) {
+					expired.add(idle.removeLast());
+				}
+
+				if (idle.isEmpty()) it.remove();
+			}
+
+			workers.removeAll(expired);
+		}
+
+		//Closing waits for the worker to exit, which is better done without blocking anything else
+		expired.forEach(Worker::close);
+	}
+
+	private void close() {
+		List<Worker> remaining;
+
+		synchronized (this) {
+			remaining = new ArrayList<>(workers);
+			workers.clear();
+			idleWorkers.clear();
+		}
+
+		reaper.shutdownNow();
+		remaining.forEach(Worker::close);
+	}
+}
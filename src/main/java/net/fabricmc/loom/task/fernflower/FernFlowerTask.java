@@ -28,11 +28,10 @@ import java.io.OutputStream;
 import java.io.PrintStream;
 import java.text.MessageFormat;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Stack;
-import java.util.function.Supplier;
 
 import org.gradle.api.internal.project.ProjectInternal;
 import org.gradle.api.logging.LogLevel;
@@ -43,12 +42,10 @@ import org.gradle.internal.logging.progress.ProgressLoggerFactory;
 import org.gradle.internal.service.ServiceRegistry;
 import org.gradle.process.ExecResult;
 
-import org.jetbrains.java.decompiler.main.extern.IFernflowerLogger.Severity;
 import org.jetbrains.java.decompiler.main.extern.IFernflowerPreferences;
 
 import net.fabricmc.loom.task.AbstractDecompileTask;
 import net.fabricmc.loom.task.ForkingJavaExecTask;
-import net.fabricmc.loom.util.ConsumingOutputStream;
 import net.fabricmc.loom.util.OperatingSystem;
 
 /**
@@ -57,6 +54,9 @@ import net.fabricmc.loom.util.OperatingSystem;
 public class FernFlowerTask extends AbstractDecompileTask implements ForkingJavaExecTask {
 	private boolean noFork = false;
 	private int numThreads = Runtime.getRuntime().availableProcessors();
+	private String maxHeap = "3G";
+	private int chunkSize = 0;
+	private boolean useWorkers = false;
 
 	@TaskAction
 	public void doTask() throws Throwable {
@@ -83,6 +83,11 @@ public class FernFlowerTask extends AbstractDecompileTask implements ForkingJava
 		}
 
 		args.add("-t=" + getNumThreads());
+
+		if (getChunkSize() > 0) {
+			args.add("-c=" + getChunkSize());
+		}
+
 		args.add("-m=" + getExtension().getMappingsProvider().MAPPINGS_TINY.getAbsolutePath());
 
 		//TODO, Decompiler breaks on jemalloc, J9 module-info.class?
@@ -91,68 +96,22 @@ public class FernFlowerTask extends AbstractDecompileTask implements ForkingJava
 		ServiceRegistry registry = ((ProjectInternal) getProject()).getServices();
         ProgressLoggerFactory factory = registry.get(ProgressLoggerFactory.class);
         ProgressLogger progressGroup = factory.newOperation(getClass()).setDescription("Decompile");
-        Supplier<ProgressLogger> loggerFactory = () -> {
-            ProgressLogger pl = factory.newOperation(getClass(), progressGroup);
-            pl.setDescription("decompile worker");
-            pl.started();
-            return pl;
-        };
-        Stack<ProgressLogger> freeLoggers = new Stack<>();
-        Map<String, ProgressLogger> inUseLoggers = new HashMap<>();
-
-        OutputStream stdOutput = new ConsumingOutputStream(line -> {
-            if (line.startsWith("Listening for transport")) {
-                System.out.println(line);
-                return;
-            }
-
-            int sepIdx = line.indexOf("::");
-            if (sepIdx < 1) {
-            	getLogger().error("Unprefixed line: " + line);
-            	return;
-            }
-            String id = line.substring(0, sepIdx).trim();
-            String data = line.substring(sepIdx + 2).trim();
-
-            ProgressLogger logger = inUseLoggers.get(id);
-
-            String[] segs = data.split(" ");
-            if (segs[0].equals("waiting")) {
-                if (logger != null) {
-                    logger.progress("Idle..");
-                    inUseLoggers.remove(id);
-                    freeLoggers.push(logger);
-                }
-            } else {
-                if (logger == null) {
-                    if (!freeLoggers.isEmpty()) {
-                        logger = freeLoggers.pop();
-                    } else {
-                        logger = loggerFactory.get();
-                    }
-                    inUseLoggers.put(id, logger);
-                }
-
-                if (data.startsWith(Severity.INFO.prefix)) {
-                	logger.progress(data.substring(Severity.INFO.prefix.length()));
-                } else if (data.startsWith(Severity.TRACE.prefix)) {
-                	logger.progress(data.substring(Severity.TRACE.prefix.length()));
-                } else if (data.startsWith(Severity.WARN.prefix)) {
-                	getLogger().warn(data.substring(Severity.WARN.prefix.length()));
-                } else {
-                	getLogger().error(data.substring(Severity.ERROR.prefix.length()));
-                }
-            }
-        });
+        DecompileProgressListener progress = new DecompileProgressListener(getClass(), factory, progressGroup, getLogger());
+
+        OutputStream stdOutput = new ProgressProtocol.Decoder(progress);
         OutputStream errOutput = System.err;
 
         try {
 	        progressGroup.started();
 
-	        if (!isNoFork()) {
+	        if (isNoFork()) {
+	        	ForkedFFExecutor.main(args.toArray(new String[0]), new PrintStream(stdOutput, true), new PrintStream(errOutput, true));
+	        } else if (isUseWorkers()) {
+	        	DecompilerWorkerPool.decompile(forkingClasspath(), Arrays.asList("-Xms200m", "-Xmx" + getMaxHeap()), args, progress);
+	        } else {
 		        ExecResult result = javaexec(spec -> {
 		            spec.setMain(ForkedFFExecutor.class.getName());
-		            spec.jvmArgs("-Xms200m", "-Xmx3G");
+		            spec.jvmArgs("-Xms200m", "-Xmx" + getMaxHeap());
 		            spec.setArgs(args);
 		            spec.setErrorOutput(errOutput);
 		            spec.setStandardOutput(stdOutput);
@@ -160,12 +119,9 @@ public class FernFlowerTask extends AbstractDecompileTask implements ForkingJava
 
 		        result.rethrowFailure();
 		        result.assertNormalExitValue();
-	        } else {
-	        	ForkedFFExecutor.main(args.toArray(new String[0]), new PrintStream(stdOutput, true), new PrintStream(errOutput, true));
 	        }
         } finally {
-	        inUseLoggers.values().forEach(ProgressLogger::completed);
-	        freeLoggers.forEach(ProgressLogger::completed);
+	        progress.completed();
 	        progressGroup.completed();
         }
     }
@@ -180,6 +136,33 @@ public class FernFlowerTask extends AbstractDecompileTask implements ForkingJava
 		return noFork;
 	}
 
+	/**
+	 * The maximum heap size given to the forked decompiler, as would be passed to {@code -Xmx}.
+	 */
+	@Internal
+	public String getMaxHeap() {
+		return maxHeap;
+	}
+
+	/**
+	 * The number of classes decompiled together at once, or {@code 0} to decompile the whole jar in one go.
+	 *
+	 * <p>Smaller chunks lower the memory needed to decompile at the cost of some speed.
+	 */
+	@Internal
+	public int getChunkSize() {
+		return chunkSize;
+	}
+
+	/**
+	 * Whether to decompile using a persistent worker JVM which is reused by later decompiles,
+	 * including those in later builds run by the same Gradle daemon, rather than forking a new JVM each time.
+	 */
+	@Internal
+	public boolean isUseWorkers() {
+		return useWorkers;
+	}
+
 	public void setNoFork(boolean noFork) {
 		this.noFork = noFork;
 	}
@@ -187,4 +170,16 @@ public class FernFlowerTask extends AbstractDecompileTask implements ForkingJava
 	public void setNumThreads(int numThreads) {
 		this.numThreads = numThreads;
 	}
+
+	public void setMaxHeap(String maxHeap) {
+		this.maxHeap = maxHeap;
+	}
+
+	public void setChunkSize(int chunkSize) {
+		this.chunkSize = chunkSize;
+	}
+
+	public void setUseWorkers(boolean useWorkers) {
+		this.useWorkers = useWorkers;
+	}
 }
@@ -32,6 +32,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.jar.JarFile;
 
 import org.jetbrains.java.decompiler.main.Fernflower;
 import org.jetbrains.java.decompiler.main.extern.IFernflowerLogger;
@@ -57,6 +58,7 @@ public class ForkedFFExecutor {
 		File mappings = null;
 		List<File> libraries = new ArrayList<>();
 		int numThreads = 0;
+		int chunkSize = 0;
 
 		boolean isOption = true;
 		for (String arg : args) {
@@ -95,6 +97,8 @@ public class ForkedFFExecutor {
 					mappings = new File(arg.substring(3));
 				} else if (arg.startsWith("-t=")) {
 					numThreads = Integer.parseInt(arg.substring(3));
+				} else if (arg.startsWith("-c=")) {
+					chunkSize = Integer.parseInt(arg.substring(3));
 				} else {
 					if (input != null) {
 						throw new RuntimeException("Unable to set more than one input.");
@@ -109,19 +113,67 @@ public class ForkedFFExecutor {
 		Objects.requireNonNull(output, "Output not set.");
 		//Objects.requireNonNull(mappings, "Mappings not set.");
 
-		runFF(options, libraries, input, output, lineMap, stdOut, errOut);
+		if (chunkSize > 0) {
+			runChunkedFF(options, libraries, input, output, lineMap, chunkSize, stdOut, errOut);
+		} else {
+			runFF(options, libraries, input, output, lineMap, stdOut, errOut);
+		}
 	}
 
 	public static void runFF(Map<String, Object> options, List<File> libraries, File input, File output, File lineMap, PrintStream stdOut, PrintStream stdErr) {
 		IResultSaver saver = new ThreadSafeResultSaver(() -> output, () -> lineMap);
 		IFernflowerLogger logger = new ThreadIDFFLogger(stdOut, stdErr);
-		Fernflower ff = new Fernflower(FernFlowerUtils::getBytecode, saver, options, logger);
 
-		for (File library : libraries) {
-            ff.getStructContext().addSpace(library, false);
+		try (MappedArchiveProvider archives = new MappedArchiveProvider()) {
+			Fernflower ff = new Fernflower(archives, saver, options, logger);
+
+			for (File library : libraries) {
+	            ff.getStructContext().addSpace(library, false);
+			}
+
+	        ff.getStructContext().addSpace(input, true);
+			ff.decompileContext();
+		}
+	}
+
+	/**
+	 * Decompiles the input in separate contexts of at most roughly chunkSize classes each,
+	 * so that the memory needed for decompiling scales with the size of the chunks rather than the whole input.
+	 *
+	 * <p>Each chunk's context adds the libraries and the rest of the input as library spaces (so their code is never
+	 * kept), then the chunk's own classes on top. Nothing parsed is carried between contexts, only the open archives,
+	 * so everything a chunk loads can be collected once it has been written out.
+	 */
+	public static void runChunkedFF(Map<String, Object> options, List<File> libraries, File input, File output, File lineMap, int chunkSize, PrintStream stdOut, PrintStream stdErr) throws IOException {
+		ChunkedResultSaver saver = new ChunkedResultSaver(new ThreadSafeResultSaver(() -> output, () -> lineMap), output.getParent(), output.getName());
+		IFernflowerLogger logger = new ThreadIDFFLogger(stdOut, stdErr);
+
+		List<List<String>> chunks = DecompileChunks.partition(input, chunkSize);
+		File chunkJar = File.createTempFile("fabric-loom-decompile", ".jar");
+
+		try (JarFile jar = new JarFile(input)) {
+			saver.open(jar.getManifest());
 		}
 
-        ff.getStructContext().addSpace(input, true);
-		ff.decompileContext();
+		//Shared between chunks so the libraries and input are only opened once
+		try (MappedArchiveProvider archives = new MappedArchiveProvider()) {
+			for (List<String> chunk : chunks) {
+				archives.release(chunkJar);
+				DecompileChunks.write(input, chunk, chunkJar);
+
+				Fernflower ff = new Fernflower(archives, saver, options, logger);
+
+				for (File library : libraries) {
+					ff.getStructContext().addSpace(library, false);
+				}
+
+				ff.getStructContext().addSpace(input, false);
+				ff.getStructContext().addSpace(chunkJar, true); //Replaces the library versions of the chunk's classes
+				ff.decompileContext();
+			}
+		} finally {
+			saver.close();
+			chunkJar.delete();
+		}
 	}
 }
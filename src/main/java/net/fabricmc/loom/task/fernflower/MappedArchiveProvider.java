@@ -0,0 +1,332 @@
+/*
+ * This file is part of fabric-loom, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2016, 2017, 2018 FabricMC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.fabricmc.loom.task.fernflower;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.jetbrains.java.decompiler.main.extern.IBytecodeProvider;
+import org.jetbrains.java.decompiler.util.InterpreterUtil;
+
+/**
+ * A thread safe {@link IBytecodeProvider} which only opens each archive once, rather than for every class read.
+ *
+ * <p>Archives are memory mapped with their central directory indexed by name up front, so any number of
+ * decompiler threads can then read entries out of them at once. Archives which can't be mapped (such as
+ * Zip64 ones) are instead kept open as a {@link ZipFile}. Everything is released by {@link #close()}.
+ */
+public class MappedArchiveProvider implements IBytecodeProvider, Closeable {
+	private interface Archive extends Closeable {
+		byte[] read(String name) throws IOException;
+
+		@Override
+		void close();
+	}
+
+	private static class Entry {
+		public final int method;
+		public final int compressedSize;
+		public final int size;
+		public final int localHeader;
+
+		Entry(int method, int compressedSize, int size, int localHeader) {
+			this.method = method;
+			this.compressedSize = compressedSize;
+			this.size = size;
+			this.localHeader = localHeader;
+		}
+	}
+
+	private static class MappedArchive implements Archive {
+		private static final int EOCD_SIGNATURE = 0x06054b50;
+		private static final int CEN_SIGNATURE = 0x02014b50;
+		private static final int LOC_SIGNATURE = 0x04034b50;
+
+		private final MappedByteBuffer buffer;
+		private final Map<String, Entry> entries;
+		private final ThreadLocal<Inflater> inflaters;
+		/** Reads hold the read lock, so the buffer is only ever unmapped once nothing is reading from it */
+		private final ReadWriteLock lock = new ReentrantReadWriteLock();
+		private boolean closed;
+
+		static MappedArchive tryMap(File file, ThreadLocal<Inflater> inflaters) throws IOException {
+			MappedByteBuffer buffer;
+			try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+				if (channel.size() > Integer.MAX_VALUE) return null;
+				buffer = channel.map(MapMode.READ_ONLY, 0, channel.size());
+			}
+			buffer.order(ByteOrder.LITTLE_ENDIAN);
+
+			int end = -1;
+			for (int i = buffer.limit() - 22, min = Math.max(0, i - 0xFFFF); i >= min; i--) {
+				if (buffer.getInt(i) == EOCD_SIGNATURE) {
+					end = i;
+					break;
+				}
+			}
+
+			int count = end >= 0 ? buffer.getShort(end + 10) & 0xFFFF : 0xFFFF;
+			long directory = end >= 0 ? buffer.getInt(end + 16) & 0xFFFFFFFFL : 0xFFFFFFFFL;
+			if (count == 0xFFFF || directory >= buffer.limit()) {
+				//Either not a zip or one needing Zip64 support, ZipFile can handle it instead
+				unmap(buffer);
+				return null;
+			}
+
+			Map<String, Entry> entries = new HashMap<>(count * 4 / 3 + 1);
+			for (int pos = (int) directory, i = 0; i < count; i++) {
+				if (buffer.getInt(pos) != CEN_SIGNATURE) {
+					unmap(buffer);
+					throw new IOException("Invalid central directory entry in " + file + " @ " + pos);
+				}
+
+				int method = buffer.getShort(pos + 10) & 0xFFFF;
+				int compressedSize = buffer.getInt(pos + 20);
+				int size = buffer.getInt(pos + 24);
+				int nameLength = buffer.getShort(pos + 28) & 0xFFFF;
+				int extraLength = buffer.getShort(pos + 30) & 0xFFFF;
+				int commentLength = buffer.getShort(pos + 32) & 0xFFFF;
+				int localHeader = buffer.getInt(pos + 42);
+
+				byte[] name = new byte[nameLength];
+				ByteBuffer view = buffer.duplicate();
+				view.position(pos + 46);
+				view.get(name);
+
+				entries.put(new String(name, StandardCharsets.UTF_8), new Entry(method, compressedSize, size, localHeader));
+				pos += 46 + nameLength + extraLength + commentLength;
+			}
+
+			return new MappedArchive(buffer, entries, inflaters);
+		}
+
+		private MappedArchive(MappedByteBuffer buffer, Map<String, Entry> entries, ThreadLocal<Inflater> inflaters) {
+			this.buffer = buffer;
+			this.entries = entries;
+			this.inflaters = inflaters;
+		}
+
+		@Override
+		public byte[] read(String name) throws IOException {
+			lock.readLock().lock();
+			try {
+				//Reading from an unmapped buffer takes the whole JVM down rather than throwing
+				if (closed) throw new IOException("Archive closed whilst reading " + name);
+
+				return readEntry(name);
+			} finally {
+				lock.readLock().unlock();
+			}
+		}
+
+		private byte[] readEntry(String name) throws IOException {
+			Entry entry = entries.get(name);
+			if (entry == null) throw new IOException("Entry not found: " + name);
+
+			if (buffer.getInt(entry.localHeader) != LOC_SIGNATURE) throw new IOException("Invalid local header for " + name);
+			int data = entry.localHeader + 30 + (buffer.getShort(entry.localHeader + 26) & 0xFFFF) + (buffer.getShort(entry.localHeader + 28) & 0xFFFF);
+
+			ByteBuffer view = buffer.duplicate();
+			view.position(data);
+
+			switch (entry.method) {
+			case ZipEntry.STORED: {
+				byte[] out = new byte[entry.size];
+				view.get(out);
+				return out;
+			}
+
+			case ZipEntry.DEFLATED: {
+				byte[] in = new byte[entry.compressedSize + 1]; //Inflater wants an extra dummy byte when not wrapped
+				view.get(in, 0, entry.compressedSize);
+
+				byte[] out = new byte[entry.size];
+				Inflater inflater = inflaters.get();
+				inflater.reset();
+				inflater.setInput(in);
+
+				try {
+					for (int read = 0; read < out.length;) {
+						int inflated = inflater.inflate(out, read, out.length - read);
+
+						if (inflated == 0 && (inflater.finished() || inflater.needsInput() || inflater.needsDictionary())) {
+							throw new IOException("Truncated entry " + name);
+						}
+
+						read += inflated;
+					}
+				} catch (DataFormatException e) {
+					throw new IOException("Corrupt entry " + name, e);
+				}
+
+				return out;
+			}
+
+			default:
+				throw new IOException("Unsupported compression method " + entry.method + " for " + name);
+			}
+		}
+
+		@Override
+		public void close() {
+			lock.writeLock().lock();
+			try {
+				if (!closed) {
+					closed = true;
+					unmap(buffer);
+				}
+			} finally {
+				lock.writeLock().unlock();
+			}
+		}
+	}
+
+	private static class ZipArchive implements Archive {
+		private final ZipFile zip;
+
+		ZipArchive(File file) throws IOException {
+			zip = new ZipFile(file);
+		}
+
+		@Override
+		public byte[] read(String name) throws IOException {
+			ZipEntry entry = zip.getEntry(name);
+			if (entry == null) throw new IOException("Entry not found: " + name);
+
+			return InterpreterUtil.getBytes(zip, entry);
+		}
+
+		@Override
+		public void close() {
+			try {
+				zip.close();
+			} catch (IOException e) {
+				//Nothing useful to do about it
+			}
+		}
+	}
+
+	private final Map<String, Archive> archives = new ConcurrentHashMap<>();
+	private final Set<Inflater> allInflaters = ConcurrentHashMap.newKeySet();
+	private final ThreadLocal<Inflater> inflaters = ThreadLocal.withInitial(() -> {
+		Inflater inflater = new Inflater(true);
+		allInflaters.add(inflater);
+		return inflater;
+	});
+	private volatile boolean closed;
+
+	@Override
+	public byte[] getBytecode(String externalPath, String internalPath) throws IOException {
+		if (internalPath == null) {
+			return InterpreterUtil.getBytes(new File(externalPath));
+		}
+
+		Archive archive = archives.get(externalPath);
+		if (archive == null) {
+			synchronized (archives) {
+				if (closed) throw new IOException("Provider closed whilst reading " + externalPath);
+				archive = archives.get(externalPath);
+
+				if (archive == null) {
+					File file = new File(externalPath);
+					archive = MappedArchive.tryMap(file, inflaters);
+					if (archive == null) archive = new ZipArchive(file);
+
+					archives.put(externalPath, archive);
+				}
+			}
+		}
+
+		return archive.read(internalPath);
+	}
+
+	/**
+	 * Closes the given archive if it has been opened, for when it is about to be changed.
+	 * Waits for any reads already in progress from it to finish first.
+	 */
+	public void release(File file) {
+		Archive archive = archives.remove(file.getAbsolutePath());
+		if (archive != null) archive.close();
+	}
+
+	@Override
+	public void close() {
+		synchronized (archives) {
+			closed = true;
+		}
+
+		archives.values().forEach(Archive::close);
+		archives.clear();
+
+		//Every read has either finished or been refused by now, so nothing is still using an inflater
+		allInflaters.forEach(Inflater::end);
+		allInflaters.clear();
+	}
+
+	/**
+	 * Mapped buffers otherwise only get released when they are garbage collected, which leaves the file locked on Windows.
+	 * Unsafe to do whilst anything might still be reading from the buffer, hence only being done by a closing archive.
+	 */
+	static void unmap(MappedByteBuffer buffer) {
+		try {
+			Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+			Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class); //Java 9+
+			Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+			theUnsafe.setAccessible(true);
+			invokeCleaner.invoke(theUnsafe.get(null), buffer);
+		} catch (NoSuchMethodException e) {
+			try {
+				Method getCleaner = buffer.getClass().getMethod("cleaner"); //Java 8
+				getCleaner.setAccessible(true);
+				Object cleaner = getCleaner.invoke(buffer);
+				if (cleaner != null) cleaner.getClass().getMethod("clean").invoke(cleaner);
+			} catch (ReflectiveOperationException | RuntimeException ignored) {
+				//Can't do it, will have to be left to the GC
+			}
+		} catch (ReflectiveOperationException | RuntimeException ignored) {
+			//Can't do it, will have to be left to the GC
+		}
+	}
+}
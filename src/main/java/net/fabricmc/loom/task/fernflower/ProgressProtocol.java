@@ -0,0 +1,180 @@
+/*
+ * This file is part of fabric-loom, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2016, 2017, 2018 FabricMC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.fabricmc.loom.task.fernflower;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import net.fabricmc.loom.util.ConsumingOutputStream;
+
+/**
+ * The binary event stream a forked decompiler uses to report what each of its threads is doing.
+ *
+ * <p>Each event is framed as a {@code 0} byte, the event type, the big endian thread ID (or exit code for {@link #DONE}),
+ * then a big endian unsigned short length followed by that many bytes of UTF-8 detail. Anything else in the stream
+ * is taken to be plain text (such as from the JVM itself), and is split into lines as normal.
+ */
+public class ProgressProtocol {
+	public static final byte READING = 1;
+	public static final byte DECOMPILING = 2;
+	public static final byte METHOD = 3;
+	public static final byte WRITING = 4;
+	public static final byte IDLE = 5;
+	public static final byte STATUS = 6;
+	public static final byte WARN = 7;
+	public static final byte ERROR = 8;
+	public static final byte DONE = 9;
+
+	private static final byte FRAME = 0;
+	private static final int HEADER = 8;
+	private static final int MAX_DETAIL = 0xFFFF;
+	private static final ThreadLocal<byte[]> BUFFERS = ThreadLocal.withInitial(() -> new byte[256]);
+
+	public interface Listener {
+		void onEvent(byte type, int id, String detail);
+
+		void onText(String line);
+	}
+
+	public static void write(PrintStream out, byte type, int id, String detail) {
+		int length = detail.length();
+		byte[] buffer = BUFFERS.get();
+
+		if (buffer.length < HEADER + length) {
+			BUFFERS.set(buffer = new byte[HEADER + Math.min(length, MAX_DETAIL)]);
+		}
+
+		int size = 0;
+		for (; size < length && size < MAX_DETAIL; size++) {
+			char c = detail.charAt(size);
+			if (c >= 0x80) break;
+
+			buffer[HEADER + size] = (byte) c;
+		}
+
+		if (size < length && size < MAX_DETAIL) {
+			//Not plain ASCII, so fall back to doing it properly
+			byte[] bytes = detail.getBytes(StandardCharsets.UTF_8);
+			size = Math.min(bytes.length, MAX_DETAIL);
+
+			if (buffer.length < HEADER + size) {
+				BUFFERS.set(buffer = new byte[HEADER + size]);
+			}
+
+			System.arraycopy(bytes, 0, buffer, HEADER, size);
+		}
+
+		buffer[0] = FRAME;
+		buffer[1] = type;
+		buffer[2] = (byte) (id >>> 24);
+		buffer[3] = (byte) (id >>> 16);
+		buffer[4] = (byte) (id >>> 8);
+		buffer[5] = (byte) id;
+		buffer[6] = (byte) (size >>> 8);
+		buffer[7] = (byte) size;
+
+		out.write(buffer, 0, HEADER + size);
+	}
+
+	/**
+	 * Reads the event stream written to it, passing each event on to the given {@link Listener} as soon as it is complete.
+	 */
+	public static class Decoder extends OutputStream {
+		private final Listener listener;
+		private final OutputStream text;
+		private byte[] buffer = new byte[8192];
+		private int length;
+
+		public Decoder(Listener listener) {
+			this.listener = listener;
+			text = new ConsumingOutputStream(listener::onText);
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			ensureCapacity(1);
+			buffer[length++] = (byte) b;
+			process();
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			ensureCapacity(len);
+			System.arraycopy(b, off, buffer, length, len);
+			length += len;
+			process();
+		}
+
+		private void ensureCapacity(int extra) {
+			if (length + extra > buffer.length) {
+				buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, length + extra));
+			}
+		}
+
+		private void process() throws IOException {
+			int pos = 0;
+
+			while (pos < length) {
+				if (buffer[pos] != FRAME) {
+					int end = pos + 1;
+					while (end < length && buffer[end] != FRAME) end++;
+
+					text.write(buffer, pos, end - pos);
+					pos = end;
+				} else {
+					if (length - pos < HEADER) break;
+					int size = (buffer[pos + 6] & 0xFF) << 8 | buffer[pos + 7] & 0xFF;
+					if (length - pos < HEADER + size) break;
+
+					byte type = buffer[pos + 1];
+					int id = (buffer[pos + 2] & 0xFF) << 24 | (buffer[pos + 3] & 0xFF) << 16 | (buffer[pos + 4] & 0xFF) << 8 | buffer[pos + 5] & 0xFF;
+					String detail = size > 0 ? new String(buffer, pos + HEADER, size, StandardCharsets.UTF_8) : "";
+
+					listener.onEvent(type, id, detail);
+					pos += HEADER + size;
+				}
+			}
+
+			if (pos > 0) {
+				System.arraycopy(buffer, pos, buffer, 0, length - pos);
+				length -= pos;
+			}
+		}
+
+		@Override
+		public void flush() throws IOException {
+			text.flush();
+		}
+
+		@Override
+		public void close() throws IOException {
+			text.write('\n');
+			text.flush();
+		}
+	}
+}
@@ -25,8 +25,7 @@
 package net.fabricmc.loom.task.fernflower;
 
 import java.io.PrintStream;
-import java.text.MessageFormat;
-import java.util.Stack;
+import java.util.Arrays;
 
 import org.jetbrains.java.decompiler.main.extern.IFernflowerLogger;
 
@@ -35,90 +34,123 @@ import org.jetbrains.java.decompiler.main.extern.IFernflowerLogger;
  * to the console in a machine parsable way.
  *
  * <p>Created by covers1624 on 11/02/19.
+ *
+ * @see ProgressProtocol
  */
 public class ThreadIDFFLogger extends IFernflowerLogger {
+	private static class ThreadState {
+		public final int id = (int) Thread.currentThread().getId();
+		private byte[] types = new byte[8];
+		private String[] details = new String[8];
+		private int depth;
+
+		void push(byte type, String detail) {
+			if (depth == types.length) {
+				types = Arrays.copyOf(types, depth * 2);
+				details = Arrays.copyOf(details, depth * 2);
+			}
+
+			types[depth] = type;
+			details[depth++] = detail;
+		}
+
+		void pop() {
+			details[--depth] = null;
+		}
+	}
+
 	public final PrintStream stdOut;
 	public final PrintStream stdErr;
 
-	private ThreadLocal<Stack<String>> workingClass = ThreadLocal.withInitial(Stack::new);
-	private ThreadLocal<Stack<String>> line = ThreadLocal.withInitial(Stack::new);
+	private final ThreadLocal<ThreadState> state = ThreadLocal.withInitial(ThreadState::new);
 
 	public ThreadIDFFLogger(PrintStream stdOut, PrintStream stdErr) {
 		this.stdOut = stdOut;
 		this.stdErr = stdErr;
 	}
 
-    @Override
-    public void writeMessage(String message, Severity severity) {
-    	line.get().push(severity.prefix + message);
-    	print();
-    }
-
-    @Override
-    public void writeMessage(String message, Severity severity, Throwable t) {
-        stdErr.println(message);
-        t.printStackTrace(stdErr);
-    }
-
-	private void print() {
-		Thread thread = Thread.currentThread();
-		long id = thread.getId();
-
-		if (line.get().isEmpty()) {
-            stdOut.println(MessageFormat.format("{0} :: waiting", id));
-			return;
+	@Override
+	public void writeMessage(String message, Severity severity) {
+		byte type;
+		switch (severity) {
+		case TRACE:
+		case INFO:
+			type = ProgressProtocol.STATUS;
+			break;
+
+		case WARN:
+			type = ProgressProtocol.WARN;
+			break;
+
+		case ERROR:
+		default:
+			type = ProgressProtocol.ERROR;
+			break;
 		}
 
-		String line = this.line.get().peek();
-        stdOut.println(MessageFormat.format("{0} :: {1}", id, line).trim());
+		ProgressProtocol.write(stdOut, type, state.get().id, message);
 	}
 
-    @Override
-    public void startReadingClass(String className) {
-        workingClass.get().push(className);
-        writeMessage("Reading " + className, Severity.INFO);
-    }
+	@Override
+	public void writeMessage(String message, Severity severity, Throwable t) {
+		stdErr.println(message);
+		t.printStackTrace(stdErr);
+	}
+
+	private void start(byte type, String detail) {
+		ThreadState state = this.state.get();
+		state.push(type, detail);
+		ProgressProtocol.write(stdOut, type, state.id, detail);
+	}
 
-    @Override
-    public void startClass(String className) {
-        workingClass.get().push(className);
-        writeMessage("Decompiling " + className, Severity.INFO);
-    }
+	private void end() {
+		ThreadState state = this.state.get();
+		state.pop();
 
-    @Override
-    public void startMethod(String methodName) {
-        String className = workingClass.get().peek();
-        writeMessage("Decompiling " + className + '.' + methodName.substring(0, methodName.indexOf(' ')), Severity.INFO);
-    }
+		if (state.depth > 0) {
+			ProgressProtocol.write(stdOut, state.types[state.depth - 1], state.id, state.details[state.depth - 1]);
+		} else {
+			ProgressProtocol.write(stdOut, ProgressProtocol.IDLE, state.id, "");
+		}
+	}
+
+	@Override
+	public void startReadingClass(String className) {
+		start(ProgressProtocol.READING, className);
+	}
+
+	@Override
+	public void startClass(String className) {
+		start(ProgressProtocol.DECOMPILING, className);
+	}
+
+	@Override
+	public void startMethod(String methodName) {
+		start(ProgressProtocol.METHOD, methodName);
+	}
 
 	@Override
 	public void endMethod() {
-		line.get().pop();
-		print();
+		end();
 	}
 
 	@Override
-    public void endClass() {
-        line.get().pop();
-        workingClass.get().pop();
-        print();
-    }
+	public void endClass() {
+		end();
+	}
 
-    @Override
-    public void startWriteClass(String className) {
-    	writeMessage("Writing " + className, Severity.INFO);
-    }
+	@Override
+	public void startWriteClass(String className) {
+		start(ProgressProtocol.WRITING, className);
+	}
 
 	@Override
 	public void endWriteClass() {
-		line.get().pop();
-		print();
+		end();
 	}
 
 	@Override
 	public void endReadingClass() {
-		line.get().pop();
-		workingClass.get().pop();
-		print();
+		end();
 	}
 }
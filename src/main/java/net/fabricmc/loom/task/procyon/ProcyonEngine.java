@@ -0,0 +1,199 @@
+/*
+ * This file is part of fabric-loom, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2016, 2017, 2018 FabricMC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.fabricmc.loom.task.procyon;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.jar.JarFile;
+import java.util.stream.Collectors;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import com.strobel.assembler.InputTypeLoader;
+import com.strobel.assembler.metadata.CompositeTypeLoader;
+import com.strobel.assembler.metadata.DeobfuscationUtilities;
+import com.strobel.assembler.metadata.ITypeLoader;
+import com.strobel.assembler.metadata.JarTypeLoader;
+import com.strobel.assembler.metadata.MetadataSystem;
+import com.strobel.assembler.metadata.TypeDefinition;
+import com.strobel.assembler.metadata.TypeReference;
+import com.strobel.decompiler.DecompilationOptions;
+import com.strobel.decompiler.DecompilerSettings;
+import com.strobel.decompiler.PlainTextOutput;
+import com.strobel.decompiler.languages.LineNumberPosition;
+import com.strobel.decompiler.languages.TypeDecompilationResults;
+
+import net.fabricmc.loom.task.DecompilerEngine;
+import net.fabricmc.loom.util.LineNumberRemapper;
+import net.fabricmc.loom.util.progress.ProgressLogger;
+
+/**
+ * Decompiles using Procyon, with each outer class decompiled in parallel on a fork/join pool.
+ *
+ * <p>Each pool thread has its own {@link MetadataSystem} and type loaders given Procyon's type caches and the loaders'
+ * lookup maps aren't thread safe, only the {@link JarFile}s they read from are shared. The sources are always written
+ * in the same (sorted) order regardless of which thread finishes first, with only a few classes per thread submitted
+ * ahead of the writer so finished sources don't pile up.
+ */
+public class ProcyonEngine implements DecompilerEngine {
+	private static final int IN_FLIGHT_PER_THREAD = 4;
+
+	private static class Decompiled {
+		public final String name;
+		public final String source;
+		public final int[] lineMapping;
+
+		Decompiled(String name, String source, int[] lineMapping) {
+			this.name = name;
+			this.source = source;
+			this.lineMapping = lineMapping;
+		}
+	}
+
+	private static class Context {
+		public final DecompilerSettings settings = DecompilerSettings.javaDefaults();
+		public final MetadataSystem metadata;
+
+		Context(List<JarFile> jars) {
+			ITypeLoader[] loaders = new ITypeLoader[jars.size() + 1];
+			for (int i = 0; i < jars.size(); i++) {
+				loaders[i] = new JarTypeLoader(jars.get(i));
+			}
+			loaders[jars.size()] = new InputTypeLoader();
+
+			ITypeLoader typeLoader = new CompositeTypeLoader(loaders);
+			settings.setTypeLoader(typeLoader);
+			metadata = new MetadataSystem(typeLoader);
+		}
+	}
+
+	@Override
+	public void decompile(File input, Collection<File> libraries, File output, File lineMap, int threads, ProgressLogger logger) throws IOException {
+		List<JarFile> jars = new ArrayList<>();
+		ForkJoinPool pool = new ForkJoinPool(Math.max(threads, 1));
+
+		try {
+			JarFile inputJar = new JarFile(input);
+			jars.add(inputJar);
+
+			for (File library : libraries) {
+				if (library.isFile()) {
+					jars.add(new JarFile(library));
+				}
+			}
+
+			ThreadLocal<Context> contexts = ThreadLocal.withInitial(() -> new Context(jars));
+
+			List<String> classes = inputJar.stream().map(ZipEntry::getName).filter(name -> name.endsWith(".class")).sorted().collect(Collectors.toList());
+			List<ForkJoinTask<Decompiled>> tasks = new ArrayList<>(classes.size());
+			int window = Math.max(threads, 1) * IN_FLIGHT_PER_THREAD;
+
+			try (ZipOutputStream zos = new ZipOutputStream(new FileOutputStream(output));
+					PrintWriter lineMapWriter = lineMap != null ? new PrintWriter(new OutputStreamWriter(new FileOutputStream(lineMap), StandardCharsets.UTF_8)) : null) {
+				for (int i = 0; i < classes.size(); i++) {
+					//Only keep a bounded number of classes ahead of the writer, otherwise every finished source waits in memory
+					while (tasks.size() < classes.size() && tasks.size() < i + window) {
+						String name = classes.get(tasks.size());
+						tasks.add(pool.submit(() -> decompile(contexts.get(), name.substring(0, name.length() - 6))));
+					}
+
+					Decompiled result = tasks.get(i).join();
+					tasks.set(i, null); //Let the finished source be collected once it is written
+					if (result == null) continue; //Inner class, decompiled with its outer class
+
+					logger.progress(() -> "Writing " + result.name);
+					zos.putNextEntry(new ZipEntry(result.name + ".java"));
+					zos.write(result.source.getBytes(StandardCharsets.UTF_8));
+					zos.closeEntry();
+
+					if (lineMapWriter != null && result.lineMapping != null) {
+						LineNumberRemapper.writeMappings(lineMapWriter, result.name, result.lineMapping);
+					}
+				}
+			}
+		} finally {
+			pool.shutdownNow();
+
+			for (JarFile jar : jars) {
+				jar.close();
+			}
+		}
+	}
+
+	private static Decompiled decompile(Context context, String name) {
+		TypeReference type = context.metadata.lookupType(name);
+		TypeDefinition resolved;
+
+		if (type == null || (resolved = type.resolve()) == null) {
+			return new Decompiled(name, "//Unable to resolve " + name + '\n', null);
+		}
+
+		if (resolved.isNested() || resolved.isAnonymous() || resolved.isSynthetic()) {
+			return null;
+		}
+
+		StringWriter writer = new StringWriter();
+		PlainTextOutput output = new PlainTextOutput(writer);
+		output.setIndentToken("\t");
+
+		DecompilationOptions options = new DecompilationOptions();
+		options.setSettings(context.settings);
+		options.setFullDecompilation(true);
+
+		try {
+			DeobfuscationUtilities.processType(resolved);
+			TypeDecompilationResults results = context.settings.getLanguage().decompileType(resolved, output, options);
+
+			List<LineNumberPosition> positions = results.getLineNumberPositions();
+			int[] lineMapping = new int[positions.size() * 2];
+			int size = 0;
+
+			for (LineNumberPosition position : positions) {
+				if (position.getOriginalLine() > 0 && position.getEmittedLine() > 0) {
+					lineMapping[size++] = position.getOriginalLine();
+					lineMapping[size++] = position.getEmittedLine();
+				}
+			}
+
+			return new Decompiled(name, writer.toString(), size < lineMapping.length ? Arrays.copyOf(lineMapping, size) : lineMapping);
+		} catch (Throwable t) {
+			StringWriter error = new StringWriter();
+			t.printStackTrace(new PrintWriter(error));
+
+			return new Decompiled(name, "/*\n * Failed to decompile " + name + ":\n * " + error.toString().replace("\n", "\n * ") + "\n */\n", null);
+		}
+	}
+}
@@ -43,8 +43,7 @@ public class Checksum {
 		}
 
 		try {
-			@SuppressWarnings("deprecation")
-			HashCode hash = Files.asByteSource(file).hash(Hashing.sha1());
+			HashCode hash = sha1(file);
 			StringBuilder builder = new StringBuilder();
 
 			for (Byte hashBytes : hash.asBytes()) {
@@ -59,4 +58,9 @@ public class Checksum {
 
 		return false;
 	}
+
+	@SuppressWarnings("deprecation")
+	public static HashCode sha1(File file) throws IOException {
+		return Files.asByteSource(file).hash(Hashing.sha1());
+	}
 }
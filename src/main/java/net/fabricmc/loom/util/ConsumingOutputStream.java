@@ -26,15 +26,21 @@ package net.fabricmc.loom.util;
 
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 import java.util.function.Consumer;
 
 /**
  * Created by covers1624 on 20/12/18.
+ *
+ * <p>Bytes are treated as UTF-8, with each line passed to the consumer trimmed as soon as it is terminated.
+ * Partial lines are held until they are finished, so {@link #flush()} never splits one.
  */
 public class ConsumingOutputStream extends OutputStream {
 	private final Consumer<String> consumer;
 
-	private StringBuilder buffer = new StringBuilder();
+	private byte[] buffer = new byte[256];
+	private int length;
 
 	public ConsumingOutputStream(Consumer<String> consumer) {
 		this.consumer = consumer;
@@ -42,26 +48,68 @@ public class ConsumingOutputStream extends OutputStream {
 
 	@Override
 	public void write(int b) throws IOException {
-		char ch = (char) (b & 0xFF);
-		buffer.append(ch);
-
-		if (ch == '\n' || ch == '\r') {
-			flush();
+		if (b == '\n' || b == '\r') {
+			accept(buffer, 0, length);
+			length = 0;
+		} else {
+			ensureCapacity(1);
+			buffer[length++] = (byte) b;
 		}
 	}
 
 	@Override
-	public void flush() throws IOException {
-		String str = buffer.toString();
+	public void write(byte[] b, int off, int len) throws IOException {
+		int end = off + len;
+		int start = off;
 
-		if (str.endsWith("\r") || str.endsWith("\n")) {
-			str = str.trim();
+		for (int i = off; i < end; i++) {
+			byte c = b[i];
+			if (c != '\n' && c != '\r') continue;
 
-			if (!str.isEmpty()) {
-				consumer.accept(str);
+			if (length > 0) {
+				//Finish off the line from a previous write
+				append(b, start, i - start);
+				accept(buffer, 0, length);
+				length = 0;
+			} else {
+				accept(b, start, i - start);
 			}
 
-			buffer = new StringBuilder();
+			start = i + 1;
+		}
+
+		append(b, start, end - start);
+	}
+
+	private void append(byte[] b, int off, int len) {
+		if (len > 0) {
+			ensureCapacity(len);
+			System.arraycopy(b, off, buffer, length, len);
+			length += len;
+		}
+	}
+
+	private void ensureCapacity(int extra) {
+		if (length + extra > buffer.length) {
+			buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, length + extra));
 		}
 	}
+
+	private void accept(byte[] b, int off, int len) {
+		int start = off;
+		int end = off + len;
+
+		//Equivalent to String#trim, as any multi-byte characters will never be below a space
+		while (start < end && (b[start] & 0xFF) <= ' ') start++;
+		while (start < end && (b[end - 1] & 0xFF) <= ' ') end--;
+
+		if (start < end) {
+			consumer.accept(new String(b, start, end - start, StandardCharsets.UTF_8));
+		}
+	}
+
+	@Override
+	public void flush() throws IOException {
+		//Nothing to do, lines are passed on as soon as they end
+	}
 }
@@ -0,0 +1,127 @@
+/*
+ * This file is part of fabric-loom, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2016, 2017, 2018 FabricMC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.fabricmc.loom.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import com.google.common.hash.HashCode;
+
+/**
+ * Remembers the SHA-1 of files by their path, size and modification time, so only files which have changed need reading again.
+ *
+ * <p>The hashes are kept one {@code size\tmodified\thash\tpath} line per file, with any for files which no longer exist forgotten
+ * when read. Files modified too recently to trust their timestamp are hashed without being remembered. Changes are only written
+ * by {@link #save()}, which replaces the whole file at once so a concurrent build never reads half of it.
+ */
+public class FileHashes {
+	/** How recently a file can have been modified and still have its hash kept, as a change within the timestamp's precision wouldn't be noticed */
+	private static final long MODIFICATION_GRACE = 2000;
+	private final Path store;
+	private Map<String, String[]> known;
+	private boolean changed;
+
+	public FileHashes(Path store) {
+		this.store = store;
+	}
+
+	public HashCode sha1(File file) throws IOException {
+		if (known == null) known = read();
+
+		String path = file.getAbsolutePath();
+		String size = Long.toString(file.length());
+		long lastModified = file.lastModified();
+		String modified = Long.toString(lastModified);
+
+		String[] entry = known.get(path);
+		if (entry == null || !entry[0].equals(size) || !entry[1].equals(modified)) {
+			entry = new String[] {size, modified, Checksum.sha1(file).toString()};
+
+			if (System.currentTimeMillis() - lastModified >= MODIFICATION_GRACE) {
+				known.put(path, entry);
+				changed = true;
+			}
+		}
+
+		return HashCode.fromString(entry[2]);
+	}
+
+	/** Reads the known hashes as {@code size, modified, hash} by file path, forgetting any for files which no longer exist */
+	private Map<String, String[]> read() {
+		Map<String, String[]> known = new HashMap<>();
+		if (Files.notExists(store)) return known;
+
+		try {
+			for (String line : Files.readAllLines(store, StandardCharsets.UTF_8)) {
+				String[] parts = line.split("\t", 4);
+				if (parts.length == 4 && Files.exists(Paths.get(parts[3]))) known.put(parts[3], Arrays.copyOf(parts, 3));
+			}
+		} catch (IOException | InvalidPathException e) {
+			//Only a cache, so it can just be rebuilt
+			known.clear();
+		}
+
+		return known;
+	}
+
+	/** Writes out any hashes which have been added or changed since the file was read */
+	public void save() throws IOException {
+		if (!changed) return;
+
+		StringBuilder out = new StringBuilder();
+		for (Entry<String, String[]> entry : known.entrySet()) {
+			String[] parts = entry.getValue();
+			out.append(parts[0]).append('\t').append(parts[1]).append('\t').append(parts[2]).append('\t').append(entry.getKey()).append('\n');
+		}
+
+		//Written off to the side so a concurrent build never reads half a file
+		Files.createDirectories(store.getParent());
+		Path temp = Files.createTempFile(store.getParent(), store.getFileName().toString(), ".tmp");
+		try {
+			Files.write(temp, out.toString().getBytes(StandardCharsets.UTF_8));
+
+			try {
+				Files.move(temp, store, StandardCopyOption.ATOMIC_MOVE);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(temp, store, StandardCopyOption.REPLACE_EXISTING);
+			}
+		} finally {
+			Files.deleteIfExists(temp);
+		}
+
+		changed = false;
+	}
+}
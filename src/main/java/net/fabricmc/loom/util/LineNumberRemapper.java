@@ -28,9 +28,10 @@ import static java.text.MessageFormat.format;
 
 import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileReader;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.FileVisitResult;
 import java.nio.file.Files;
 import java.nio.file.Path;
@@ -57,7 +58,7 @@ public class LineNumberRemapper {
 	private final Map<String, RClass> lineMap = new HashMap<>();
 
 	public void readMappings(File lineMappings) {
-		try (BufferedReader reader = new BufferedReader(new FileReader(lineMappings))) {
+		try (BufferedReader reader = Files.newBufferedReader(lineMappings.toPath(), StandardCharsets.UTF_8)) {
 			RClass clazz = null;
 			String line = null;
 			int i = 0;
@@ -88,6 +89,28 @@ public class LineNumberRemapper {
 		}
 	}
 
+	/**
+	 * Writes the line mappings for a single class in the format {@link #readMappings(File)} expects.
+	 *
+	 * @param writer The writer to write the mappings to
+	 * @param className The internal name of the (outer) class the mappings are for
+	 * @param mapping Pairs of original (bytecode) lines and the decompiled source lines they map to
+	 */
+	public static void writeMappings(PrintWriter writer, String className, int[] mapping) {
+		int maxLine = 0;
+		int maxLineDest = 0;
+		StringBuilder builder = new StringBuilder();
+
+		for (int i = 0; i < mapping.length; i += 2) {
+			maxLine = Math.max(maxLine, mapping[i]);
+			maxLineDest = Math.max(maxLineDest, mapping[i + 1]);
+			builder.append("\t").append(mapping[i]).append("\t").append(mapping[i + 1]).append("\n");
+		}
+
+		writer.println(className + "\t" + maxLine + "\t" + maxLineDest);
+		writer.println(builder.toString());
+	}
+
 	public void process(ProgressLogger logger, Path input, Path output) throws IOException {
 		Files.walkFileTree(input, new SimpleFileVisitor<Path>() {
 			@Override
@@ -110,7 +133,7 @@ public class LineNumberRemapper {
 					String idx = rel.substring(0, rel.length() - 6);
 
 					if (logger != null) {
-						logger.progress("Remapping " + idx);
+						logger.progress(() -> "Remapping " + rel.substring(0, rel.length() - 6));
 					}
 
 					int dollarPos = idx.indexOf('$'); //This makes the assumption that only Java classes are to be remapped.
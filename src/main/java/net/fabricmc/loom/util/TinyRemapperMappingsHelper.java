@@ -24,6 +24,12 @@
 
 package net.fabricmc.loom.util;
 
+import java.lang.ref.SoftReference;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+
 import net.fabricmc.mappings.ClassEntry;
 import net.fabricmc.mappings.EntryTriple;
 import net.fabricmc.mappings.FieldEntry;
@@ -33,25 +39,61 @@ import net.fabricmc.tinyremapper.IMappingProvider;
 import net.fabricmc.tinyremapper.MemberInstance;
 
 public class TinyRemapperMappingsHelper {
-	private TinyRemapperMappingsHelper() { }
-
-	public static IMappingProvider create(Mappings mappings, String from, String to, boolean remapLocalVariables) {
-		if (remapLocalVariables) throw new UnsupportedOperationException("TODO");
+	/** The maps a remapper is loaded with for a given pair of namespaces, built once then copied into each remapper wholesale */
+	private static final class Compiled {
+		final Map<String, String> classes, fields, methods;
 
-		return (classMap, fieldMap, methodMap) -> {
-			for (ClassEntry entry : mappings.getClassEntries()) {
-				classMap.put(entry.get(from), entry.get(to));
+		Compiled(Mappings mappings, String from, String to) {
+			Collection<ClassEntry> classEntries = mappings.getClassEntries();
+			classes = new HashMap<>(classEntries.size() * 4 / 3 + 1);
+			for (ClassEntry entry : classEntries) {
+				classes.put(entry.get(from), entry.get(to));
 			}
 
-			for (FieldEntry entry : mappings.getFieldEntries()) {
+			Collection<FieldEntry> fieldEntries = mappings.getFieldEntries();
+			fields = new HashMap<>(fieldEntries.size() * 4 / 3 + 1);
+			for (FieldEntry entry : fieldEntries) {
 				EntryTriple fromTriple = entry.get(from);
-				fieldMap.put(fromTriple.getOwner() + '/' + MemberInstance.getFieldId(fromTriple.getName(), fromTriple.getDesc()), entry.get(to).getName());
+				fields.put(fromTriple.getOwner() + '/' + MemberInstance.getFieldId(fromTriple.getName(), fromTriple.getDesc()), entry.get(to).getName());
 			}
 
-			for (MethodEntry entry : mappings.getMethodEntries()) {
+			Collection<MethodEntry> methodEntries = mappings.getMethodEntries();
+			methods = new HashMap<>(methodEntries.size() * 4 / 3 + 1);
+			for (MethodEntry entry : methodEntries) {
 				EntryTriple fromTriple = entry.get(from);
-				methodMap.put(fromTriple.getOwner() + '/' + MemberInstance.getMethodId(fromTriple.getName(), fromTriple.getDesc()), entry.get(to).getName());
+				methods.put(fromTriple.getOwner() + '/' + MemberInstance.getMethodId(fromTriple.getName(), fromTriple.getDesc()), entry.get(to).getName());
 			}
+		}
+	}
+	/** Compiled maps for each from/to pair, kept for as long as the mappings they came from are (which {@code MappingsCache} holds softly) */
+	private static final Map<Mappings, Map<String, SoftReference<Compiled>>> CACHE = new WeakHashMap<>();
+
+	private TinyRemapperMappingsHelper() { }
+
+	private static synchronized Compiled compile(Mappings mappings, String from, String to) {
+		Map<String, SoftReference<Compiled>> pairs = CACHE.computeIfAbsent(mappings, k -> new HashMap<>());
+		String pair = from + '\t' + to;
+
+		SoftReference<Compiled> ref = pairs.get(pair);
+		Compiled compiled = ref != null ? ref.get() : null;
+
+		if (compiled == null) {
+			compiled = new Compiled(mappings, from, to);
+			pairs.put(pair, new SoftReference<>(compiled));
+		}
+
+		return compiled;
+	}
+
+	public static IMappingProvider create(Mappings mappings, String from, String to, boolean remapLocalVariables) {
+		if (remapLocalVariables) throw new UnsupportedOperationException("TODO");
+
+		return (classMap, fieldMap, methodMap) -> {
+			Compiled compiled = compile(mappings, from, to);
+
+			classMap.putAll(compiled.classes);
+			fieldMap.putAll(compiled.fields);
+			methodMap.putAll(compiled.methods);
 		};
 	}
 }
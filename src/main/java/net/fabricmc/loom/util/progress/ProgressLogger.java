@@ -24,32 +24,76 @@
 
 package net.fabricmc.loom.util.progress;
 
-import java.lang.reflect.InvocationTargetException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Method;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 
 import org.gradle.api.Project;
 
 /**
  * Wrapper to ProgressLogger internal API.
+ *
+ * <p>Calls to {@link #progress(String)} are throttled to {@link #setMaxUpdatesPerSecond(int) a maximum rate},
+ * with {@link #progress(Supplier)} allowing the status to only be built when it will actually be shown.
  */
 public class ProgressLogger {
+	private static class Handles {
+		private static final MethodType GETTER = MethodType.methodType(String.class, Object.class);
+		private static final MethodType SETTER = MethodType.methodType(void.class, Object.class, String.class);
+		private static final MethodType ACTION = MethodType.methodType(void.class, Object.class);
+		private static final MethodType START = MethodType.methodType(void.class, Object.class, String.class, String.class);
+
+		final MethodHandle getDescription, setDescription, getShortDescription, setShortDescription, getLoggingHeader, setLoggingHeader, start, started, startedArg, progress, completed, completedArg;
+
+		Handles(Class<?> type) {
+			getDescription = find(type, "getDescription", GETTER);
+			setDescription = find(type, "setDescription", SETTER, String.class);
+			getShortDescription = find(type, "getShortDescription", GETTER);
+			setShortDescription = find(type, "setShortDescription", SETTER, String.class);
+			getLoggingHeader = find(type, "getLoggingHeader", GETTER);
+			setLoggingHeader = find(type, "setLoggingHeader", SETTER, String.class);
+			start = find(type, "start", START, String.class, String.class);
+			started = find(type, "started", ACTION);
+			startedArg = find(type, "started", SETTER, String.class);
+			progress = find(type, "progress", SETTER, String.class);
+			completed = find(type, "completed", ACTION);
+			completedArg = find(type, "completed", SETTER, String.class);
+		}
+
+		private static MethodHandle find(Class<?> type, String methodName, MethodType as, Class<?>... args) {
+			try {
+				Method method = type.getMethod(methodName, args);
+				method.setAccessible(true);
+
+				MethodHandle handle = MethodHandles.lookup().unreflect(method);
+				return handle.asType(as);
+			} catch (ReflectiveOperationException | RuntimeException ignored) {
+				//Nope
+			}
+
+			return null;
+		}
+	}
+
+	private static final ClassValue<Handles> HANDLES = new ClassValue<Handles>() {
+		@Override
+		protected Handles computeValue(Class<?> type) {
+			return new Handles(type);
+		}
+	};
+
 	private final Object logger;
-	private final Method getDescription, setDescription, getShortDescription, setShortDescription, getLoggingHeader, setLoggingHeader, start, started, startedArg, progress, completed, completedArg;
+	private final Handles handles;
+	private long minInterval = TimeUnit.SECONDS.toNanos(1) / 20;
+	private long lastProgress;
 
 	private ProgressLogger(Object logger) {
 		this.logger = logger;
-		this.getDescription = getMethod("getDescription");
-		this.setDescription = getMethod("setDescription", String.class);
-		this.getShortDescription = getMethod("getShortDescription");
-		this.setShortDescription = getMethod("setShortDescription", String.class);
-		this.getLoggingHeader = getMethod("getLoggingHeader");
-		this.setLoggingHeader = getMethod("setLoggingHeader", String.class);
-		this.start = getMethod("start", String.class, String.class);
-		this.started = getMethod("started");
-		this.startedArg = getMethod("started", String.class);
-		this.progress = getMethod("progress", String.class);
-		this.completed = getMethod("completed");
-		this.completedArg = getMethod("completed", String.class);
+		this.handles = logger != null ? HANDLES.get(logger.getClass()) : null;
+		this.lastProgress = System.nanoTime() - minInterval;
 	}
 
 	private static Class<?> getFactoryClass() {
@@ -70,11 +114,11 @@ public class ProgressLogger {
 		return progressLoggerFactoryClass;
 	}
 
-	private Method getMethod(String methodName, Class<?>... args) {
-		if (logger != null) {
+	private String get(MethodHandle method) {
+		if (method != null) {
 			try {
-				return logger.getClass().getMethod(methodName, args);
-			} catch (NoSuchMethodException ignored) {
+				return (String) method.invokeExact(logger);
+			} catch (Throwable ignored) {
 				//Nope
 			}
 		}
@@ -82,17 +126,24 @@ public class ProgressLogger {
 		return null;
 	}
 
-	private Object invoke(Method method, Object... args) {
-		if (logger != null) {
+	private void run(MethodHandle method) {
+		if (method != null) {
 			try {
-				method.setAccessible(true);
-				return method.invoke(logger, args);
-			} catch (IllegalAccessException | InvocationTargetException ignored) {
+				method.invokeExact(logger);
+			} catch (Throwable ignored) {
 				//Nope
 			}
 		}
+	}
 
-		return null;
+	private void run(MethodHandle method, String status) {
+		if (method != null) {
+			try {
+				method.invokeExact(logger, status);
+			} catch (Throwable ignored) {
+				//Nope
+			}
+		}
 	}
 
 	/**
@@ -122,7 +173,7 @@ public class ProgressLogger {
 	 * @return the description, must not be empty.
 	 */
 	public String getDescription() {
-		return (String) invoke(getDescription);
+		return logger != null ? get(handles.getDescription) : null;
 	}
 
 	/**
@@ -133,7 +184,7 @@ public class ProgressLogger {
 	 * @param description The description.
 	 */
 	public ProgressLogger setDescription(String description) {
-		invoke(setDescription, description);
+		if (logger != null) run(handles.setDescription, description);
 		return this;
 	}
 
@@ -143,7 +194,7 @@ public class ProgressLogger {
 	 * @return The short description, must not be empty.
 	 */
 	public String getShortDescription() {
-		return (String) invoke(getShortDescription);
+		return logger != null ? get(handles.getShortDescription) : null;
 	}
 
 	/**
@@ -154,7 +205,7 @@ public class ProgressLogger {
 	 * @param description The short description.
 	 */
 	public ProgressLogger setShortDescription(String description) {
-		invoke(setShortDescription, description);
+		if (logger != null) run(handles.setShortDescription, description);
 		return this;
 	}
 
@@ -167,7 +218,7 @@ public class ProgressLogger {
 	 * @return The logging header, possibly empty.
 	 */
 	public String getLoggingHeader() {
-		return (String) invoke(getLoggingHeader);
+		return logger != null ? get(handles.getLoggingHeader) : null;
 	}
 
 	/**
@@ -177,7 +228,7 @@ public class ProgressLogger {
 	 * @param header The header. May be empty or null.
 	 */
 	public ProgressLogger setLoggingHeader(String header) {
-		invoke(setLoggingHeader, header);
+		if (logger != null) run(handles.setLoggingHeader, header);
 		return this;
 	}
 
@@ -187,7 +238,14 @@ public class ProgressLogger {
 	 * @return this logger instance
 	 */
 	public ProgressLogger start(String description, String shortDescription) {
-		invoke(start, description, shortDescription);
+		if (logger != null && handles.start != null) {
+			try {
+				handles.start.invokeExact(logger, description, shortDescription);
+			} catch (Throwable ignored) {
+				//Nope
+			}
+		}
+
 		return this;
 	}
 
@@ -195,7 +253,7 @@ public class ProgressLogger {
 	 * Logs the start of the operation, with no initial status.
 	 */
 	public void started() {
-		invoke(started);
+		if (logger != null) run(handles.started);
 	}
 
 	/**
@@ -204,7 +262,29 @@ public class ProgressLogger {
 	 * @param status The initial status message. Can be null or empty.
 	 */
 	public void started(String status) {
-		invoke(startedArg, status);
+		if (logger != null) run(handles.startedArg, status);
+	}
+
+	/**
+	 * Sets the maximum number of times per second {@link #progress(String)} or {@link #progress(Supplier)}
+	 * will actually update the status, any more frequent calls will be dropped. Defaults to 20.
+	 *
+	 * @param updates The maximum number of updates per second, or {@code 0} for no limit.
+	 */
+	public ProgressLogger setMaxUpdatesPerSecond(int updates) {
+		minInterval = updates > 0 ? TimeUnit.SECONDS.toNanos(1) / updates : 0;
+		return this;
+	}
+
+	private boolean shouldUpdate() {
+		if (logger == null) return false;
+		if (minInterval <= 0) return true;
+
+		long now = System.nanoTime();
+		if (now - lastProgress < minInterval) return false;
+
+		lastProgress = now;
+		return true;
 	}
 
 	/**
@@ -213,14 +293,23 @@ public class ProgressLogger {
 	 * @param status The new status message. Can be null or empty.
 	 */
 	public void progress(String status) {
-		invoke(progress, status);
+		if (shouldUpdate()) run(handles.progress, status);
+	}
+
+	/**
+	 * Logs some progress, indicated by a new status which will only be created if it is to be shown.
+	 *
+	 * @param status The supplier of the new status message. The message can be null or empty.
+	 */
+	public void progress(Supplier<String> status) {
+		if (shouldUpdate()) run(handles.progress, status.get());
 	}
 
 	/**
 	 * Logs the completion of the operation, with no final status.
 	 */
 	public void completed() {
-		invoke(completed);
+		if (logger != null) run(handles.completed);
 	}
 
 	/**
@@ -229,6 +318,6 @@ public class ProgressLogger {
 	 * @param status The final status message. Can be null or empty.
 	 */
 	public void completed(String status) {
-		invoke(completedArg, status);
+		if (logger != null) run(handles.completedArg, status);
 	}
 }